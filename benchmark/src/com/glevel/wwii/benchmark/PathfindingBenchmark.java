@@ -0,0 +1,251 @@
+package com.glevel.wwii.benchmark;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import com.glevel.wwii.game.logic.pathfinding.AStar;
+import com.glevel.wwii.game.logic.pathfinding.GridAStar;
+import com.glevel.wwii.game.logic.pathfinding.HierarchicalPath;
+import com.glevel.wwii.game.logic.pathfinding.HierarchicalPathfinder;
+import com.glevel.wwii.game.logic.pathfinding.MovingElement;
+import com.glevel.wwii.game.logic.pathfinding.Node;
+import com.glevel.wwii.game.models.map.Map;
+import com.glevel.wwii.game.models.map.MoverClass;
+import com.glevel.wwii.game.models.map.Tile;
+import com.glevel.wwii.game.models.map.TileGrid;
+
+/**
+ * Runs the same seeded queries with each pathfinding engine on the shipped
+ * maps, for infantry and vehicles : latency percentiles, expanded nodes and
+ * allocated bytes per query. Engines which find the shortest path are checked
+ * against GridAStar.
+ */
+public class PathfindingBenchmark {
+
+    private static final String[] MAPS = { "oosterbeck.tmx", "nijmegen.tmx", "arnhem_streets.tmx" };
+    private static final int NB_QUERIES = 2000;
+    private static final int NB_WARM_UP_ROUNDS = 3;
+    private static final long SEED = 42;
+
+    public static void main(String[] args) throws Exception {
+        File directory = new File(args.length > 0 ? args[0] : "assets/tmx");
+
+        System.out.println(String.format("%-20s %-9s %-12s %8s %10s %10s %12s %12s", "map", "mover", "engine",
+                "queries", "p50 us", "p99 us", "expanded/q", "bytes/q"));
+        for (String mapName : MAPS) {
+            Map map = TmxMapLoader.load(new File(directory, mapName));
+            for (MoverClass moverClass : MoverClass.values()) {
+                run(mapName, map, moverClass);
+            }
+        }
+    }
+
+    private static void run(String mapName, Map map, MoverClass moverClass) {
+        TileGrid grid = new TileGrid(map, moverClass, null);
+        int[][] queries = buildQueries(grid);
+        GridAStar reference = new GridAStar();
+
+        for (Engine engine : getEngines(map, moverClass, grid)) {
+            for (int round = 0; round < NB_WARM_UP_ROUNDS; round++) {
+                for (int[] query : queries) {
+                    engine.search(query[0], query[1]);
+                }
+            }
+            engine.resetExpandedNodes();
+
+            long[] latencies = new long[queries.length];
+            long allocatedBytes = getAllocatedBytes();
+            for (int n = 0; n < queries.length; n++) {
+                long start = System.nanoTime();
+                engine.search(queries[n][0], queries[n][1]);
+                latencies[n] = System.nanoTime() - start;
+            }
+            allocatedBytes = getAllocatedBytes() - allocatedBytes;
+            int expandedNodes = engine.getExpandedNodes();
+
+            // same path costs as plain A*
+            if (engine.isShortest()) {
+                for (int[] query : queries) {
+                    boolean isFound = engine.search(query[0], query[1]);
+                    boolean isReferenceFound = reference.search(grid, query[0], query[1], true, Integer.MAX_VALUE);
+                    if (isFound != isReferenceFound || isFound
+                            && Math.abs(engine.getPathCost() - reference.getPathCost()) > 1e-3) {
+                        throw new IllegalStateException("different paths with " + engine.name + " on " + mapName
+                                + " from " + query[0] + " to " + query[1]);
+                    }
+                }
+            }
+
+            Arrays.sort(latencies);
+            System.out.println(String.format("%-20s %-9s %-12s %8d %10.1f %10.1f %12s %12s", mapName,
+                    moverClass.name().toLowerCase(), engine.name, queries.length,
+                    latencies[queries.length / 2] / 1e3, latencies[queries.length * 99 / 100] / 1e3,
+                    expandedNodes >= 0 ? String.format("%.1f", (double) expandedNodes / queries.length) : "-",
+                    allocatedBytes >= 0 ? String.valueOf(allocatedBytes / queries.length) : "-"));
+        }
+    }
+
+    /**
+     * Random pairs of walkable tiles, always the same for a given map.
+     */
+    private static int[][] buildQueries(TileGrid grid) {
+        Random random = new Random(SEED);
+        int nbCells = grid.getWidth() * grid.getHeight();
+        int[][] queries = new int[NB_QUERIES][2];
+        for (int[] query : queries) {
+            do {
+                query[0] = random.nextInt(nbCells);
+            } while (!grid.isWalkable(query[0]));
+            do {
+                query[1] = random.nextInt(nbCells);
+            } while (!grid.isWalkable(query[1]));
+        }
+        return queries;
+    }
+
+    /**
+     * @return bytes allocated by the current thread, or -1 if the JVM cannot
+     *         tell
+     */
+    private static long getAllocatedBytes() {
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        if (threadMXBean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threadMXBean).getThreadAllocatedBytes(Thread.currentThread()
+                    .getId());
+        }
+        return -1;
+    }
+
+    private static Engine[] getEngines(final Map map, final MoverClass moverClass, final TileGrid grid) {
+        final Tile[][] tiles = map.getTiles();
+        final MovingElement mover = new MovingElement() {
+            @Override
+            public boolean canMoveIn(Node node) {
+                return grid.isWalkable(map.getIndex((Tile) node));
+            }
+        };
+
+        return new Engine[] {
+                // the engine used before GridAStar, with its own cost model
+                new Engine("AStar", false) {
+                    private final AStar<Tile> aStar = new AStar<Tile>();
+
+                    @Override
+                    boolean search(int source, int target) {
+                        List<Tile> path = aStar.search(tiles, map.getTile(source), map.getTile(target), true, mover,
+                                Integer.MAX_VALUE);
+                        return path != null;
+                    }
+                },
+
+                new GridAStarEngine("GridAStar", grid, false),
+
+                new GridAStarEngine("JPS", grid, true),
+
+                new GridAStarEngine("JPS + ALT", grid, true) {
+                    {
+                        aStar.setHeuristic(map.getLandmarkHeuristic(moverClass));
+                    }
+                },
+
+                new Engine("HPA*", false) {
+                    private final HierarchicalPathfinder pathfinder = map.getHierarchicalPathfinder(moverClass);
+
+                    @Override
+                    boolean search(int source, int target) {
+                        HierarchicalPath path = pathfinder.findPath(grid, source, target);
+                        return path != null && path.refineAll() != null;
+                    }
+
+                    @Override
+                    int getExpandedNodes() {
+                        return pathfinder.getExpandedNodes();
+                    }
+
+                    @Override
+                    void resetExpandedNodes() {
+                        pathfinder.resetExpandedNodes();
+                    }
+                } };
+    }
+
+    private static abstract class Engine {
+
+        final String name;
+        private final boolean isShortest;
+
+        /**
+         * @param name
+         * @param isShortest
+         *            true if the engine always finds the shortest path
+         */
+        Engine(String name, boolean isShortest) {
+            this.name = name;
+            this.isShortest = isShortest;
+        }
+
+        boolean isShortest() {
+            return isShortest;
+        }
+
+        /**
+         * @return true if a path was found
+         */
+        abstract boolean search(int source, int target);
+
+        /**
+         * @return the number of nodes expanded since the last reset or -1 if
+         *         the engine does not count them
+         */
+        int getExpandedNodes() {
+            return -1;
+        }
+
+        void resetExpandedNodes() {
+        }
+
+        float getPathCost() {
+            return Float.NaN;
+        }
+
+    }
+
+    private static class GridAStarEngine extends Engine {
+
+        final GridAStar aStar = new GridAStar();
+        private final TileGrid grid;
+        private final boolean useJumpPoints;
+
+        GridAStarEngine(String name, TileGrid grid, boolean useJumpPoints) {
+            super(name, true);
+            this.grid = grid;
+            this.useJumpPoints = useJumpPoints;
+        }
+
+        @Override
+        boolean search(int source, int target) {
+            return aStar.search(grid, source, target, true, useJumpPoints, Integer.MAX_VALUE);
+        }
+
+        @Override
+        int getExpandedNodes() {
+            return aStar.getExpandedNodes();
+        }
+
+        @Override
+        void resetExpandedNodes() {
+            aStar.resetExpandedNodes();
+        }
+
+        @Override
+        float getPathCost() {
+            return aStar.getPathCost();
+        }
+
+    }
+
+}
@@ -0,0 +1,95 @@
+package com.glevel.wwii.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.HashMap;
+import java.util.zip.Inflater;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import com.glevel.wwii.game.models.map.Map;
+import com.glevel.wwii.game.models.map.Tile;
+import com.glevel.wwii.game.models.map.Tile.GroundType;
+import com.glevel.wwii.game.models.map.Tile.TerrainType;
+
+/**
+ * Reads the ground layer of a .tmx map into the game's Map and Tile objects
+ * without the AndEngine TMX loader, so that the pathfinding engines can be
+ * benchmarked on a desktop JVM.
+ */
+public class TmxMapLoader {
+
+    private TmxMapLoader() {
+    }
+
+    public static Map load(File file) throws Exception {
+        Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(file);
+        Element root = document.getDocumentElement();
+        int width = Integer.parseInt(root.getAttribute("width"));
+        int height = Integer.parseInt(root.getAttribute("height"));
+
+        // ground and terrain of each tile of the tileset, same properties as
+        // the Tile constructor
+        HashMap<Integer, GroundType> groundByGid = new HashMap<Integer, GroundType>();
+        HashMap<Integer, TerrainType> terrainByGid = new HashMap<Integer, TerrainType>();
+        int firstGid = Integer.parseInt(((Element) document.getElementsByTagName("tileset").item(0))
+                .getAttribute("firstgid"));
+        NodeList tilesetTiles = document.getElementsByTagName("tile");
+        for (int n = 0; n < tilesetTiles.getLength(); n++) {
+            Element tile = (Element) tilesetTiles.item(n);
+            int gid = firstGid + Integer.parseInt(tile.getAttribute("id"));
+            NodeList properties = tile.getElementsByTagName("property");
+            for (int p = 0; p < properties.getLength(); p++) {
+                String property = ((Element) properties.item(p)).getAttribute("name");
+                for (GroundType ground : GroundType.values()) {
+                    if (ground.name().equals(property)) {
+                        groundByGid.put(gid, ground);
+                    }
+                }
+                for (TerrainType terrain : TerrainType.values()) {
+                    if (terrain.name().equals(property)) {
+                        terrainByGid.put(gid, terrain);
+                    }
+                }
+            }
+        }
+
+        // ground layer : base64 + zlib, 4 bytes little endian per tile
+        Element data = (Element) document.getElementsByTagName("data").item(0);
+        byte[] bytes = inflate(java.util.Base64.getDecoder().decode(data.getTextContent().trim()));
+        Tile[][] tiles = new Tile[height][width];
+        for (int n = 0; n < width * height; n++) {
+            int gid = (bytes[4 * n] & 0xFF) | (bytes[4 * n + 1] & 0xFF) << 8 | (bytes[4 * n + 2] & 0xFF) << 16
+                    | (bytes[4 * n + 3] & 0xFF) << 24;
+            gid &= 0x1FFFFFFF;
+            GroundType ground = groundByGid.get(gid);
+            tiles[n / width][n % width] = new Tile(n % width, n / width, ground != null ? ground : GroundType.grass,
+                    terrainByGid.get(gid));
+        }
+
+        Map map = new Map();
+        map.setTiles(tiles);
+        return map;
+    }
+
+    private static byte[] inflate(byte[] compressed) throws Exception {
+        Inflater inflater = new Inflater();
+        inflater.setInput(compressed);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        while (!inflater.finished()) {
+            int length = inflater.inflate(buffer);
+            if (length == 0 && inflater.needsInput()) {
+                break;
+            }
+            out.write(buffer, 0, length);
+        }
+        inflater.end();
+        return out.toByteArray();
+    }
+
+}
@@ -4,8 +4,6 @@ import java.util.List;
 
 import org.andengine.engine.camera.ZoomCamera;
 import org.andengine.engine.handler.IUpdateHandler;
-import org.andengine.engine.handler.timer.ITimerCallback;
-import org.andengine.engine.handler.timer.TimerHandler;
 import org.andengine.engine.options.EngineOptions;
 import org.andengine.engine.options.ScreenOrientation;
 import org.andengine.engine.options.resolutionpolicy.FillResolutionPolicy;
@@ -60,6 +58,7 @@ import com.glevel.wwii.game.graphics.TankSprite;
 import com.glevel.wwii.game.graphics.UnitSprite;
 import com.glevel.wwii.game.interfaces.OnNewSoundToPlay;
 import com.glevel.wwii.game.interfaces.OnNewSpriteToDraw;
+import com.glevel.wwii.game.logic.GameLoop;
 import com.glevel.wwii.game.logic.MapLogic;
 import com.glevel.wwii.game.models.Battle;
 import com.glevel.wwii.game.models.Battle.Phase;
@@ -100,6 +99,7 @@ public class GameActivity extends CustomLayoutGameActivity implements OnNewSprit
 	public Crosshair crosshair, crossHairLine;
 	public Protection protection;
 	private DeploymentZone deploymentZone;
+	private GameLoop mGameLoop = null;
 
 	@Override
 	public EngineOptions onCreateEngineOptions() {
@@ -324,15 +324,15 @@ public class GameActivity extends CustomLayoutGameActivity implements OnNewSprit
 					float currentRotation = unit.getCurrentRotation();
 					Tile t = MapLogic.getTileAtCoordinates(battle.getMap(), currentX, currentY);
 					unit.setTilePosition(battle, t);
-					unit.getSprite().setX(currentX);
-					unit.getSprite().setY(currentY);
-					unit.getSprite().setRotation(currentRotation);
+					unit.setPosition(currentX, currentY);
+					unit.setRotation(currentRotation);
+					unit.setTurretRotation(unit.getTurretRotation());
 					if (unit.isDead()) {
 						unit.died(battle);
 					}
 				} else {
 					// init units rotation
-					unit.getSprite().setRotation(deploymentBoundaries[0] == 0 ? 90 : -90);
+					unit.setRotation(deploymentBoundaries[0] == 0 ? 90 : -90);
 				}
 			}
 
@@ -379,47 +379,8 @@ public class GameActivity extends CustomLayoutGameActivity implements OnNewSprit
 	}
 
 	public void startGame() {
-		// register game logic loop
-		TimerHandler spriteTimerHandler = new TimerHandler(1.0f / GameUtils.GAME_LOOP_FREQUENCY, true,
-				new ITimerCallback() {
-					Player winner;
-
-					@Override
-					public void onTimePassed(TimerHandler pTimerHandler) {
-						winner = battle.update();
-						if (winner != null) {
-							endGame(winner, false);
-						}
-
-						// update selected element order's crosshair
-						if (mInputManager.selectedElement == null) {
-							crosshair.setVisible(false);
-						} else if (mInputManager.selectedElement.getGameElement() instanceof Unit) {
-							Unit unit = (Unit) mInputManager.selectedElement.getGameElement();
-							Order o = unit.getOrder();
-							if (unit.getRank() == Rank.ally && o != null) {
-								if (o instanceof FireOrder) {
-									FireOrder f = (FireOrder) o;
-									crosshair.setColor(Color.RED);
-									crosshair.setPosition(f.getXDestination(), f.getYDestination());
-									crosshair.setVisible(true);
-								} else if (o instanceof MoveOrder) {
-									MoveOrder f = (MoveOrder) o;
-									crosshair.setColor(Color.GREEN);
-									crosshair.setPosition(f.getXDestination(), f.getYDestination());
-									crosshair.setVisible(true);
-								} else {
-									crosshair.setVisible(false);
-								}
-							} else {
-								crosshair.setVisible(false);
-							}
-						}
-
-						mScene.sortChildren(true);
-					}
-				});
-		mEngine.registerUpdateHandler(spriteTimerHandler);
+		// game logic runs in the render loop, by fixed steps
+		mGameLoop = new GameLoop(battle);
 
 		// show go label
 		mGameGUI.displayBigLabel(getString(R.string.go), R.color.white);
@@ -444,7 +405,13 @@ public class GameActivity extends CustomLayoutGameActivity implements OnNewSprit
 
 			@Override
 			public void onUpdate(final float pSecondsElapsed) {
-				battle.updateMoves();
+				if (mGameLoop != null && mGameLoop.update(pSecondsElapsed) > 0) {
+					if (mGameLoop.getWinner() != null) {
+						endGame(mGameLoop.getWinner(), false);
+					}
+					updateCrosshair();
+					mScene.sortChildren(true);
+				}
 
 				// update selected element info
 				mGameGUI.updateSelectedElementLayout(mInputManager.selectedElement);
@@ -452,6 +419,35 @@ public class GameActivity extends CustomLayoutGameActivity implements OnNewSprit
 		});
 	}
 
+	/**
+	 * Updates selected element order's crosshair
+	 */
+	private void updateCrosshair() {
+		if (mInputManager.selectedElement == null) {
+			crosshair.setVisible(false);
+		} else if (mInputManager.selectedElement.getGameElement() instanceof Unit) {
+			Unit unit = (Unit) mInputManager.selectedElement.getGameElement();
+			Order o = unit.getOrder();
+			if (unit.getRank() == Rank.ally && o != null) {
+				if (o instanceof FireOrder) {
+					FireOrder f = (FireOrder) o;
+					crosshair.setColor(Color.RED);
+					crosshair.setPosition(f.getXDestination(), f.getYDestination());
+					crosshair.setVisible(true);
+				} else if (o instanceof MoveOrder) {
+					MoveOrder f = (MoveOrder) o;
+					crosshair.setColor(Color.GREEN);
+					crosshair.setPosition(f.getXDestination(), f.getYDestination());
+					crosshair.setVisible(true);
+				} else {
+					crosshair.setVisible(false);
+				}
+			} else {
+				crosshair.setVisible(false);
+			}
+		}
+	}
+
 	@Override
 	public void onBackPressed() {
 		pauseGame();
@@ -40,7 +40,11 @@ public class AI {
 	private static void updateOrders(Battle battle, Player aiPlayer) {
 		Player humanPlayer = battle.getEnemyPlayer(aiPlayer);
 
-		List<MoveOrder> moveOrdersPool = new ArrayList<MoveOrder>();
+		// one entry by enemy unit close to the point : a point threatened by
+		// several enemies can receive several defenders. The closest point by
+		// path is picked, threatened points before the ones to conquer
+		List<ObjectivePoint> threatenedObjectives = new ArrayList<ObjectivePoint>();
+		List<ObjectivePoint> objectivesToConquer = new ArrayList<ObjectivePoint>();
 
 		// defend strategic points
 		for (Unit unit : humanPlayer.getUnits()) {
@@ -50,25 +54,26 @@ public class AI {
 							&& MapLogic.getDistanceBetween(unit,
 									objective.getX(), objective.getY()) < GameUtils.PIXEL_BY_METER * 30) {
 						// this strategic point is about to be lost
-						moveOrdersPool.add(0, new MoveOrder(objective.getX(),
-								objective.getY()));
+						threatenedObjectives.add(objective);
 					} else if (objective.getOwner() != aiPlayer.getArmy()) {
 						// conquer this strategic point !
-						moveOrdersPool.add(new MoveOrder(objective.getX(),
-								objective.getY()));
+						objectivesToConquer.add(objective);
 					}
 				}
 			}
 		}
 
+		// units which receive a move order now
+		List<Unit> movingUnits = new ArrayList<Unit>();
+		List<Tile> destinations = new ArrayList<Tile>();
+
 		aiUnits: for (Unit aiUnit : aiPlayer.getUnits()) {
 			if (!aiUnit.isDead()) {
 				for (Unit playerUnit : humanPlayer.getUnits()) {
 					if (!playerUnit.isDead()
 							// give fire order if enemy unit is very close
 							&& MapLogic.getDistanceBetween(playerUnit, aiUnit) < 30 * GameUtils.PIXEL_BY_METER
-							&& MapLogic.canSee(battle.getMap(), aiUnit,
-									playerUnit)) {
+							&& battle.canSee(aiUnit, playerUnit)) {
 						aiUnit.setOrder(new FireOrder(playerUnit));
 						continue aiUnits;
 					}
@@ -77,22 +82,35 @@ public class AI {
 				if (aiUnit.getOrder() == null
 						|| (aiUnit.getOrder() instanceof DefendOrder || aiUnit
 								.getOrder() instanceof HideOrder)
-						&& Math.random() < 0.3) {
-					if (moveOrdersPool.size() > 0 && Math.random() < 0.5) {
+						&& battle.getRandom().nextDouble() < 0.3) {
+					List<ObjectivePoint> objectivesPool = threatenedObjectives
+							.size() > 0 ? threatenedObjectives
+							: objectivesToConquer;
+					ObjectivePoint objective = null;
+					if (objectivesPool.size() > 0
+							&& battle.getRandom().nextDouble() < 0.5) {
+						objective = getClosestObjective(battle, aiUnit,
+								objectivesPool);
+					}
+					if (objective != null) {
 						// conquer strategic points
-						aiUnit.setOrder(moveOrdersPool.get(0));
-						moveOrdersPool.remove(0);
+						aiUnit.setOrder(new MoveOrder(objective));
+						objectivesPool.remove(objective);
+						addMovingUnit(battle, aiUnit, movingUnits, destinations);
 					} else {
 						// random moves
-						aiUnit.setOrder(new MoveOrder((float) Math.random()
-								* battle.getMap().getWidth()
-								* GameUtils.PIXEL_BY_TILE, (float) Math
-								.random()
-								* battle.getMap().getHeight()
-								* GameUtils.PIXEL_BY_TILE));
+						aiUnit.setOrder(MapLogic.getReachableMoveOrder(
+								battle.getMap(), aiUnit, battle.getRandom()
+										.nextFloat()
+										* battle.getMap().getWidth()
+										* GameUtils.PIXEL_BY_TILE, battle
+										.getRandom().nextFloat()
+										* battle.getMap().getHeight()
+										* GameUtils.PIXEL_BY_TILE));
+						addMovingUnit(battle, aiUnit, movingUnits, destinations);
 					}
-				} else if (!(aiUnit.getOrder() instanceof MoveOrder || Math
-						.random() < 0.3)) {
+				} else if (!(aiUnit.getOrder() instanceof MoveOrder || battle
+						.getRandom().nextDouble() < 0.3)) {
 					if (aiUnit.getTilePosition().getTerrain() != null) {
 						aiUnit.setOrder(new HideOrder());
 					} else {
@@ -102,6 +120,72 @@ public class AI {
 			}
 		}
 
+		// plan the moves together so the units do not block each other
+		if (movingUnits.size() > 1) {
+			int[][] paths = MapLogic.findCooperativePaths(battle.getMap(),
+					battle.getCooperativePathfinder(), movingUnits,
+					destinations);
+
+			// a tick of the plan lasts long enough for the slowest unit to
+			// cross a tile, so all of them keep to their reservations
+			int movesByTick = 1;
+			for (int n = 0; n < paths.length; n++) {
+				int movesByTile = movingUnits.get(n).getMovesByTile();
+				if (paths[n] != null && movesByTile != Integer.MAX_VALUE) {
+					movesByTick = Math.max(movesByTick, movesByTile);
+				}
+			}
+			for (int n = 0; n < paths.length; n++) {
+				if (paths[n] != null) {
+					movingUnits.get(n).setPath(destinations.get(n), paths[n],
+							battle.getMovesCounter(), movesByTick);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the objective which is the closest by path or null if none can
+	 *         be reached
+	 */
+	private static ObjectivePoint getClosestObjective(Battle battle,
+			Unit unit, List<ObjectivePoint> objectives) {
+		List<Tile> goals = new ArrayList<Tile>();
+		for (ObjectivePoint objective : objectives) {
+			Tile tile = MapLogic.getTileAtCoordinates(battle.getMap(),
+					objective.getX(), objective.getY());
+			if (tile != null && !goals.contains(tile)) {
+				goals.add(tile);
+			}
+		}
+
+		int[] path = MapLogic.findPathToNearest(battle.getMap(), unit, goals);
+		if (path == null) {
+			return null;
+		}
+		Tile closestTile = battle.getMap().getTile(path[path.length - 1]);
+		for (ObjectivePoint objective : objectives) {
+			if (MapLogic.getTileAtCoordinates(battle.getMap(),
+					objective.getX(), objective.getY()) == closestTile) {
+				return objective;
+			}
+		}
+		return null;
+	}
+
+	private static void addMovingUnit(Battle battle, Unit unit,
+			List<Unit> movingUnits, List<Tile> destinations) {
+		if (!(unit.getOrder() instanceof MoveOrder)) {
+			// the unit cannot move
+			return;
+		}
+		MoveOrder moveOrder = (MoveOrder) unit.getOrder();
+		Tile destination = MapLogic.getTileAtCoordinates(battle.getMap(),
+				moveOrder.getXDestination(), moveOrder.getYDestination());
+		if (destination != null && unit.getTilePosition() != null) {
+			movingUnits.add(unit);
+			destinations.add(destination);
+		}
 	}
 
 	private enum AI_AGGRESSIVITY {
@@ -42,6 +42,7 @@ public class GameUtils {
 	public static final int CAMERA_HEIGHT = 480;
 
 	public static final int GAME_LOOP_FREQUENCY = 10;// per second
+	public static final int MOVES_FREQUENCY = 60;// per second
 	public static final int UPDATE_VISION_FREQUENCY = 10;
 	public static final int AI_FREQUENCY = 30;
 	public static final int CHECK_VICTORY_FREQUENCY = 10;
@@ -24,7 +24,6 @@ import com.glevel.wwii.game.models.map.Tile;
 import com.glevel.wwii.game.models.orders.DefendOrder;
 import com.glevel.wwii.game.models.orders.FireOrder;
 import com.glevel.wwii.game.models.orders.HideOrder;
-import com.glevel.wwii.game.models.orders.MoveOrder;
 import com.glevel.wwii.game.models.units.Cannon;
 import com.glevel.wwii.game.models.units.categories.Unit;
 import com.glevel.wwii.game.models.units.categories.Vehicle;
@@ -199,7 +198,7 @@ public class InputManager implements IOnSceneTouchListener, IScrollDetectorListe
 						&& ((Unit) g.getGameElement()).getArmy() != ((Unit) selectedElement.getGameElement()).getArmy()) {
 					unit.setOrder(new FireOrder((Unit) g.getGameElement()));
 				} else if (!unit.isDead() && unit.canMove()) {
-					unit.setOrder(new MoveOrder(x, y));
+					unit.setOrder(MapLogic.getReachableMoveOrder(mGameActivity.battle.getMap(), unit, x, y));
 				} else if (unit instanceof Cannon) {
 					unit.setOrder(new FireOrder(x, y));
 				}
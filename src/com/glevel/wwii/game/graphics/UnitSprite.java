@@ -95,6 +95,17 @@ public abstract class UnitSprite extends CenteredSprite {
 		super.setPosition(pX, pY);
 	}
 
+	/**
+	 * Moves the sprite only, the model keeps its position : used to draw the
+	 * element between two steps of the game loop.
+	 * 
+	 * @param pX
+	 * @param pY
+	 */
+	public void setDrawingPosition(float pX, float pY) {
+		super.setPosition(pX, pY);
+	}
+
 	@Override
 	public void setRotation(float pRotation) {
 		mGameElement.setCurrentRotation(pRotation);
@@ -0,0 +1,16 @@
+package com.glevel.wwii.game.interfaces;
+
+import com.glevel.wwii.game.models.map.Tile;
+
+public interface OnPathFound {
+
+    /**
+     * @param destination
+     * @param path
+     *            tiles' indexes from the unit's tile to the destination (both
+     *            included), which must not be modified, or null if the
+     *            destination cannot be reached
+     */
+    public void onPathFound(Tile destination, int[] path);
+
+}
@@ -0,0 +1,12 @@
+package com.glevel.wwii.game.interfaces;
+
+import com.glevel.wwii.game.models.GameElement;
+import com.glevel.wwii.game.models.map.Tile;
+
+public interface OnTileChanged {
+
+    public void onTileContentChanged(Tile tile, GameElement previousContent);
+
+    public void onTileTerrainChanged(Tile tile);
+
+}
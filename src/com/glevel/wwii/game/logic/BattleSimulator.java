@@ -0,0 +1,104 @@
+package com.glevel.wwii.game.logic;
+
+import com.glevel.wwii.game.interfaces.OnNewSoundToPlay;
+import com.glevel.wwii.game.interfaces.OnNewSpriteToDraw;
+import com.glevel.wwii.game.models.Battle;
+import com.glevel.wwii.game.models.Battle.Phase;
+import com.glevel.wwii.game.models.Player;
+import com.glevel.wwii.game.models.map.Tile;
+import com.glevel.wwii.game.models.units.categories.Unit;
+
+/**
+ * Runs a battle without any scene, as fast as possible : positions and
+ * rotations are read from the model, sprites, sounds and effects are skipped.
+ * The map of the battle must be loaded and the units deployed.
+ */
+public class BattleSimulator {
+
+    // same steps as the game loop
+    public static final int DEFAULT_MOVES_PER_UPDATE = GameLoop.MOVES_PER_UPDATE;
+
+    private static final OnNewSpriteToDraw NO_SPRITE = new OnNewSpriteToDraw() {
+        @Override
+        public void drawSprite(float x, float y, String spriteName, int duration, int size) {
+        }
+
+        @Override
+        public void drawAnimatedSprite(float x, float y, String spriteName, int frameDuration, float scale,
+                int loopCount, boolean removeAfter, int zIndex) {
+        }
+    };
+
+    private static final OnNewSoundToPlay NO_SOUND = new OnNewSoundToPlay() {
+        @Override
+        public void playSound(String soundName, float x, float y) {
+        }
+    };
+
+    private final Battle battle;
+    private final int movesPerUpdate;
+    private int nbUpdates = 0;
+
+    /**
+     * @param battle
+     * @param movesPerUpdate
+     *            number of calls to Battle.updateMoves() for each call to
+     *            Battle.update()
+     */
+    public BattleSimulator(Battle battle, int movesPerUpdate) {
+        this.battle = battle;
+        this.movesPerUpdate = movesPerUpdate;
+        battle.setOnNewSprite(NO_SPRITE);
+        battle.setOnNewSoundToPlay(NO_SOUND);
+        battle.setPhase(Phase.combat);
+    }
+
+    public BattleSimulator(Battle battle) {
+        this(battle, DEFAULT_MOVES_PER_UPDATE);
+    }
+
+    /**
+     * One tick of the game loop.
+     *
+     * @return the winner if any
+     */
+    public Player step() {
+        Player winner = battle.update();
+        for (int n = 0; n < movesPerUpdate; n++) {
+            battle.updateMoves();
+        }
+        nbUpdates++;
+        return winner;
+    }
+
+    /**
+     * @param maxUpdates
+     * @return the winner or null if nobody has won after maxUpdates ticks
+     */
+    public Player run(int maxUpdates) {
+        for (int n = 0; n < maxUpdates; n++) {
+            Player winner = step();
+            if (winner != null) {
+                return winner;
+            }
+        }
+        return null;
+    }
+
+    public int getNbUpdates() {
+        return nbUpdates;
+    }
+
+    /**
+     * Puts a unit on a tile, where the game would put its sprite.
+     *
+     * @param battle
+     * @param unit
+     * @param tile
+     */
+    public static void deploy(Battle battle, Unit unit, Tile tile) {
+        unit.setTilePosition(battle, tile);
+        unit.setPosition(tile.getTileX(), tile.getTileY());
+    }
+
+}
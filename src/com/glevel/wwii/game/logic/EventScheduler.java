@@ -0,0 +1,139 @@
+package com.glevel.wwii.game.logic;
+
+/**
+ * Hashed timer wheel counting in game ticks : an event is put in the slot of
+ * its tick, and each tick only visits its own slot. Events further than a turn
+ * of the wheel stay in their slot until their tick comes, so waiting units
+ * cost nothing per tick.
+ *
+ * Events of the same tick run in the order they were scheduled : two battles
+ * scheduling the same events give the same results.
+ */
+public class EventScheduler {
+
+    private static final int NB_SLOTS = 256;
+    private static final int SLOT_MASK = NB_SLOTS - 1;
+
+    private final Event[] heads = new Event[NB_SLOTS];
+    private final Event[] tails = new Event[NB_SLOTS];
+    private int tick;
+    private int size = 0;
+
+    public static abstract class Event {
+
+        private int tick;
+        private Event next;
+        private EventScheduler scheduler = null;
+
+        /**
+         * Called once when the tick of the event has come. The event can be
+         * scheduled again from here.
+         */
+        public abstract void run();
+
+        /**
+         * @param scheduler
+         * @return true if the event is waiting in this scheduler
+         */
+        public boolean isScheduledIn(EventScheduler scheduler) {
+            return this.scheduler != null && this.scheduler == scheduler;
+        }
+
+    }
+
+    /**
+     * @param tick
+     *            current tick of the game
+     */
+    public EventScheduler(int tick) {
+        this.tick = tick;
+    }
+
+    /**
+     * @param event
+     *            not waiting in a scheduler
+     * @param delay
+     *            number of ticks from now, at least 1
+     */
+    public void schedule(Event event, int delay) {
+        if (event.scheduler != null) {
+            throw new IllegalStateException("event already scheduled");
+        }
+        if (delay < 1) {
+            throw new IllegalArgumentException("delay must be at least 1 tick : " + delay);
+        }
+        event.tick = tick + delay;
+        event.scheduler = this;
+        append(event);
+        size++;
+    }
+
+    /**
+     * Runs the events of every tick up to the given one.
+     *
+     * @param newTick
+     */
+    public void advanceTo(int newTick) {
+        while (tick < newTick) {
+            tick++;
+            runSlot(tick & SLOT_MASK);
+        }
+    }
+
+    public int getTick() {
+        return tick;
+    }
+
+    /**
+     * @return the number of events waiting
+     */
+    public int size() {
+        return size;
+    }
+
+    private void runSlot(int slot) {
+        Event event = heads[slot];
+        heads[slot] = null;
+        tails[slot] = null;
+
+        // the events of the next turns go back in the slot first, the events
+        // scheduled while running are added after them
+        Event firstDue = null, lastDue = null;
+        while (event != null) {
+            Event next = event.next;
+            event.next = null;
+            if (event.tick == tick) {
+                if (lastDue == null) {
+                    firstDue = event;
+                } else {
+                    lastDue.next = event;
+                }
+                lastDue = event;
+            } else {
+                append(event);
+            }
+            event = next;
+        }
+
+        event = firstDue;
+        while (event != null) {
+            Event next = event.next;
+            event.next = null;
+            event.scheduler = null;
+            size--;
+            event.run();
+            event = next;
+        }
+    }
+
+    private void append(Event event) {
+        int slot = event.tick & SLOT_MASK;
+        if (tails[slot] == null) {
+            heads[slot] = event;
+        } else {
+            tails[slot].next = event;
+        }
+        tails[slot] = event;
+    }
+
+}
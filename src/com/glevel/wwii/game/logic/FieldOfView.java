@@ -0,0 +1,160 @@
+package com.glevel.wwii.game.logic;
+
+import com.glevel.wwii.game.GameUtils;
+import com.glevel.wwii.game.models.map.Map;
+import com.glevel.wwii.game.models.map.Tile;
+import com.glevel.wwii.game.models.map.Tile.TerrainType;
+
+/**
+ * Recursive shadowcasting : the tiles seen from a tile are found in one sweep
+ * of the 8 octants around it, each shadow being cast only once.
+ *
+ * Vision rules are the ones of MapLogic.canSee : a line of sight goes through
+ * the terrain of the observer and through bushes, any other terrain stops it
+ * but is seen itself. Everything is seen under MINIMAL_DISTANCE_VISIBLE, and
+ * nothing beyond MAXIMAL_DISTANCE_VISIBLE. Vehicles are ignored.
+ */
+public class FieldOfView {
+
+    // xx, xy, yx, yy of each octant
+    private static final int[][] OCTANTS = { { 1, 0, 0, 1 }, { 0, 1, 1, 0 }, { 0, -1, 1, 0 }, { -1, 0, 0, 1 },
+            { -1, 0, 0, -1 }, { 0, -1, -1, 0 }, { 0, 1, -1, 0 }, { 1, 0, 0, -1 } };
+
+    private static final int RADIUS = MapLogic.MAXIMAL_DISTANCE_VISIBLE * GameUtils.PIXEL_BY_METER
+            / GameUtils.PIXEL_BY_TILE;
+    private static final long MAX_DISTANCE = square(MapLogic.MAXIMAL_DISTANCE_VISIBLE * GameUtils.PIXEL_BY_METER);
+    private static final long MIN_DISTANCE = square(MapLogic.MINIMAL_DISTANCE_VISIBLE * GameUtils.PIXEL_BY_METER);
+
+    private final Map map;
+    private final int width;
+    private final int height;
+
+    // state of the current sweep
+    private long[] visibleTiles;
+    private TerrainType observerTerrain;
+    private int originX;
+    private int originY;
+
+    public FieldOfView(Map map) {
+        this.map = map;
+        this.width = map.getWidth();
+        this.height = map.getHeight();
+    }
+
+    /**
+     * @param origin
+     *            tile of the observer
+     * @param visibleTiles
+     *            one bit per tile index, set for the tiles which are seen
+     */
+    public void compute(Tile origin, long[] visibleTiles) {
+        for (int n = 0; n < visibleTiles.length; n++) {
+            visibleTiles[n] = 0;
+        }
+        this.visibleTiles = visibleTiles;
+        this.originX = origin.getX();
+        this.originY = origin.getY();
+        this.observerTerrain = isBlocking(origin.getTerrain()) ? origin.getTerrain() : null;
+
+        setVisible(originX, originY);
+        for (int[] octant : OCTANTS) {
+            castLight(1, 1.0f, 0.0f, octant[0], octant[1], octant[2], octant[3]);
+        }
+
+        // always seen
+        int nearRadius = MapLogic.MINIMAL_DISTANCE_VISIBLE * GameUtils.PIXEL_BY_METER / GameUtils.PIXEL_BY_TILE;
+        for (int y = originY - nearRadius; y <= originY + nearRadius; y++) {
+            for (int x = originX - nearRadius; x <= originX + nearRadius; x++) {
+                if (isInside(x, y) && getDistance(x - originX, y - originY) <= MIN_DISTANCE) {
+                    setVisible(x, y);
+                }
+            }
+        }
+    }
+
+    /**
+     * Lights the rows of an octant between two slopes, calling itself on the
+     * parts which are not shadowed when an obstacle splits the light.
+     */
+    private void castLight(int row, float start, float end, int xx, int xy, int yx, int yy) {
+        if (start < end) {
+            return;
+        }
+        float newStart = 0.0f;
+        for (int j = row; j <= RADIUS; j++) {
+            boolean isBlocked = false;
+            for (int dx = -j, dy = -j; dx <= 0; dx++) {
+                float leftSlope = (dx - 0.5f) / (dy + 0.5f);
+                float rightSlope = (dx + 0.5f) / (dy - 0.5f);
+                if (start < rightSlope) {
+                    continue;
+                } else if (end > leftSlope) {
+                    break;
+                }
+
+                int x = originX + dx * xx + dy * xy;
+                int y = originY + dx * yx + dy * yy;
+                // seen if the center of the tile is lit
+                float centerSlope = (float) dx / dy;
+                if (start >= centerSlope && centerSlope >= end && isInside(x, y)
+                        && getDistance(dx, dy) <= MAX_DISTANCE) {
+                    setVisible(x, y);
+                }
+
+                boolean isOpaque = isOpaque(x, y);
+                if (isBlocked) {
+                    if (isOpaque) {
+                        newStart = rightSlope;
+                    } else {
+                        isBlocked = false;
+                        start = newStart;
+                    }
+                } else if (isOpaque && j < RADIUS) {
+                    isBlocked = true;
+                    castLight(j + 1, start, leftSlope, xx, xy, yx, yy);
+                    newStart = rightSlope;
+                }
+            }
+            if (isBlocked) {
+                break;
+            }
+        }
+    }
+
+    private boolean isOpaque(int x, int y) {
+        if (!isInside(x, y)) {
+            return true;
+        }
+        int index = y * width + x;
+        TerrainType terrain = map.getTerrain(index);
+        return (terrain == null || map.isBlockingVision(index)) && terrain != observerTerrain;
+    }
+
+    private void setVisible(int x, int y) {
+        int index = y * width + x;
+        visibleTiles[index >>> 6] |= 1L << index;
+    }
+
+    private boolean isInside(int x, int y) {
+        return x >= 0 && y >= 0 && x < width && y < height;
+    }
+
+    /**
+     * Bushes do not count as obstacles, open ground does.
+     */
+    private static boolean isBlocking(TerrainType terrain) {
+        return terrain == null || terrain.isBlockingVision();
+    }
+
+    /**
+     * @return the square of the distance in pixels
+     */
+    private static long getDistance(int dx, int dy) {
+        return square(dx * GameUtils.PIXEL_BY_TILE) + square(dy * GameUtils.PIXEL_BY_TILE);
+    }
+
+    private static long square(long value) {
+        return value * value;
+    }
+
+}
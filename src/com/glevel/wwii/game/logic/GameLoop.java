@@ -0,0 +1,103 @@
+package com.glevel.wwii.game.logic;
+
+import com.glevel.wwii.game.GameUtils;
+import com.glevel.wwii.game.models.Battle;
+import com.glevel.wwii.game.models.Player;
+import com.glevel.wwii.game.models.units.categories.Unit;
+
+/**
+ * Fixed timestep game loop : the time of the frames is accumulated and the
+ * battle advances by steps of the same duration, whatever the frame rate. A
+ * step moves the units, the logic runs every MOVES_PER_UPDATE steps. Sprites
+ * are drawn between the last two steps.
+ */
+public class GameLoop {
+
+    public static final float STEP_DURATION = 1.0f / GameUtils.MOVES_FREQUENCY;
+    public static final int MOVES_PER_UPDATE = GameUtils.MOVES_FREQUENCY / GameUtils.GAME_LOOP_FREQUENCY;
+
+    // beyond a quarter of second late, the game slows down instead of freezing
+    // to catch up
+    public static final int MAX_STEPS_PER_FRAME = GameUtils.MOVES_FREQUENCY / 4;
+
+    private final Battle battle;
+    private float accumulator = 0.0f;
+    private long nbSteps = 0;
+    private Player winner = null;
+
+    public GameLoop(Battle battle) {
+        this.battle = battle;
+        savePreviousPositions();
+    }
+
+    /**
+     * Called once per frame.
+     *
+     * @param secondsElapsed
+     *            duration of the frame
+     * @return the number of logic updates done during the frame
+     */
+    public int update(float secondsElapsed) {
+        accumulator += secondsElapsed;
+        int nbUpdates = 0;
+        int nbFrameSteps = 0;
+        while (accumulator >= STEP_DURATION && winner == null) {
+            if (nbFrameSteps == MAX_STEPS_PER_FRAME) {
+                accumulator = 0.0f;
+                break;
+            }
+            if (step()) {
+                nbUpdates++;
+            }
+            nbFrameSteps++;
+            accumulator -= STEP_DURATION;
+        }
+
+        interpolate(accumulator / STEP_DURATION);
+        return nbUpdates;
+    }
+
+    /**
+     * @return the winner if any
+     */
+    public Player getWinner() {
+        return winner;
+    }
+
+    /**
+     * One fixed step.
+     *
+     * @return true if the logic has been updated
+     */
+    private boolean step() {
+        savePreviousPositions();
+        boolean isUpdated = nbSteps % MOVES_PER_UPDATE == 0;
+        if (isUpdated) {
+            winner = battle.update();
+        }
+        battle.updateMoves();
+        nbSteps++;
+        return isUpdated;
+    }
+
+    private void savePreviousPositions() {
+        for (Player player : battle.getPlayers()) {
+            for (Unit unit : player.getUnits()) {
+                unit.savePreviousPosition();
+            }
+        }
+    }
+
+    /**
+     * @param alpha
+     *            part of the next step already elapsed
+     */
+    private void interpolate(float alpha) {
+        for (Player player : battle.getPlayers()) {
+            for (Unit unit : player.getUnits()) {
+                unit.interpolateSprite(alpha);
+            }
+        }
+    }
+
+}
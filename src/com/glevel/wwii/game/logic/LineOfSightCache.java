@@ -0,0 +1,294 @@
+package com.glevel.wwii.game.logic;
+
+import com.glevel.wwii.game.GameUtils;
+import com.glevel.wwii.game.models.GameElement;
+import com.glevel.wwii.game.models.map.Map;
+import com.glevel.wwii.game.models.map.Tile;
+import com.glevel.wwii.game.models.map.Tile.TerrainType;
+import com.glevel.wwii.game.models.units.categories.Vehicle;
+
+/**
+ * Lines of sight between the tiles of a map. Terrain does not change during a
+ * battle : the obstacles between two tiles are walked once and the result is
+ * kept in 2 bits, the row of an observer tile being allocated the first time
+ * somebody looks from it. Vehicles move : they are only looked for when one of
+ * them stands between the two tiles.
+ *
+ * Cached lines go from the center of a tile to the center of the other one.
+ */
+public class LineOfSightCache {
+
+    // states of a line, 2 bits each
+    private static final int UNKNOWN = 0;
+    private static final int HIDDEN = 1;
+    // only the terrain of the last tile blocks the line
+    private static final int HIDDEN_BY_LAST_TILE = 2;
+    private static final int VISIBLE = 3;
+
+    private static final long NEAR_OBSTACLE_DISTANCE = square(3 * GameUtils.PIXEL_BY_METER);
+
+    private final Map map;
+    private final int width;
+    private final int height;
+    private final long[][] rows;
+
+    // tiles where a vehicle stands
+    private int[] vehicleTiles = new int[16];
+    private int nbVehicleTiles = 0;
+
+    private int hits = 0;
+    private int misses = 0;
+
+    public LineOfSightCache(Map map) {
+        this.map = map;
+        this.width = map.getWidth();
+        this.height = map.getHeight();
+        this.rows = new long[width * height][];
+        for (int index = 0; index < width * height; index++) {
+            if (getContent(index) instanceof Vehicle) {
+                addVehicleTile(index);
+            }
+        }
+    }
+
+    /**
+     * @param x0
+     * @param y0
+     *            observer position in pixels
+     * @param x1
+     * @param y1
+     *            destination in pixels
+     * @param observer
+     * @param target
+     *            element looked at, or null to look at a position
+     * @param canHideBehindVehicles
+     *            true if the target cannot be seen behind a vehicle
+     * @return true if the observer can see the destination
+     */
+    public boolean canSee(int x0, int y0, int x1, int y1, GameElement observer, GameElement target,
+            boolean canHideBehindVehicles) {
+        int fromX = getTileCoordinate(x0), fromY = getTileCoordinate(y0);
+        int toX = getTileCoordinate(x1), toY = getTileCoordinate(y1);
+        if (!isInside(fromX, fromY) || !isInside(toX, toY)) {
+            // out of the map : nothing to cache
+            int state = walk(x0, y0, x1, y1, observer, target, true, canHideBehindVehicles);
+            return state == VISIBLE;
+        }
+
+        int from = fromY * width + fromX, to = toY * width + toX;
+        int state = getState(from, to);
+        if (state != VISIBLE && (state == HIDDEN || target == null || getContent(to) != target)) {
+            if (target instanceof Vehicle) {
+                // the line may cross another tile of the vehicle before the
+                // obstacle
+                return walk(getCenter(fromX), getCenter(fromY), getCenter(toX), getCenter(toY), observer, target, true,
+                        canHideBehindVehicles) == VISIBLE;
+            }
+            return false;
+        }
+        return !canHideBehindVehicles || !isBehindVehicle(from, to, observer, target);
+    }
+
+    public int getHits() {
+        return hits;
+    }
+
+    public int getMisses() {
+        return misses;
+    }
+
+    /**
+     * Keeps track of the vehicles.
+     *
+     * @param tile
+     * @param previousContent
+     */
+    public void onTileContentChanged(Tile tile, GameElement previousContent) {
+        int index = map.getIndex(tile);
+        if (previousContent instanceof Vehicle) {
+            removeVehicleTile(index);
+        }
+        if (tile.getContent() instanceof Vehicle) {
+            addVehicleTile(index);
+        }
+    }
+
+    /**
+     * Forgets every line, they are walked again when needed.
+     */
+    public void clear() {
+        for (int n = 0; n < rows.length; n++) {
+            rows[n] = null;
+        }
+    }
+
+    /**
+     * @return the state of the line between the centers of the tiles, terrain
+     *         only
+     */
+    private int getState(int from, int to) {
+        long[] row = rows[from];
+        if (row == null) {
+            row = new long[(2 * rows.length + 63) >>> 6];
+            rows[from] = row;
+        }
+        int shift = (2 * to) & 63;
+        int state = (int) (row[to >>> 5] >>> shift) & 3;
+        if (state != UNKNOWN) {
+            hits++;
+            return state;
+        }
+
+        misses++;
+        state = walk(getCenter(from % width), getCenter(from / width), getCenter(to % width), getCenter(to / width),
+                null, null, true, false);
+        row[to >>> 5] |= (long) state << shift;
+        return state;
+    }
+
+    /**
+     * Vehicles in the box between the two tiles are rare : the line is only
+     * walked again in this case.
+     *
+     * @return true if a vehicle stands on the line, the last tile excluded
+     */
+    private boolean isBehindVehicle(int from, int to, GameElement observer, GameElement target) {
+        int minX = Math.min(from % width, to % width), maxX = Math.max(from % width, to % width);
+        int minY = Math.min(from / width, to / width), maxY = Math.max(from / width, to / width);
+        for (int n = 0; n < nbVehicleTiles; n++) {
+            int tile = vehicleTiles[n];
+            int x = tile % width, y = tile / width;
+            if (tile != to && x >= minX && x <= maxX && y >= minY && y <= maxY
+                    && getContent(tile) != observer && getContent(tile) != target) {
+                return walk(getCenter(from % width), getCenter(from / width), getCenter(to % width),
+                        getCenter(to / width), observer, target, false, true) == HIDDEN;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Walks the tiles crossed by the line, each one exactly once
+     * (Amanatides-Woo traversal with integer arithmetic only).
+     *
+     * @param x0
+     * @param y0
+     * @param x1
+     * @param y1
+     * @param observer
+     * @param target
+     *            element looked at, the line stops on its first tile, or null
+     * @param isTerrainChecked
+     *            true if changes of terrain block the line
+     * @param areVehiclesChecked
+     *            true if vehicles block the line
+     * @return HIDDEN, HIDDEN_BY_LAST_TILE or VISIBLE
+     */
+    private int walk(int x0, int y0, int x1, int y1, GameElement observer, GameElement target,
+            boolean isTerrainChecked, boolean areVehiclesChecked) {
+        int tileSize = GameUtils.PIXEL_BY_TILE;
+        int dx = x1 - x0, dy = y1 - y0;
+        int tileX = getTileCoordinate(x0), tileY = getTileCoordinate(y0);
+        int lastTileX = getTileCoordinate(x1), lastTileY = getTileCoordinate(y1);
+        int stepX = dx > 0 ? 1 : -1, stepY = dy > 0 ? 1 : -1;
+        long absDx = Math.abs(dx), absDy = Math.abs(dy);
+        // distance to the next vertical / horizontal border of tiles, in half
+        // pixels from the center of the pixel so the ends are never on a border
+        long borderX = dx > 0 ? 2 * (tileX + 1) * tileSize - (2 * x0 + 1) : 2 * x0 + 1 - 2 * tileX * tileSize;
+        long borderY = dy > 0 ? 2 * (tileY + 1) * tileSize - (2 * y0 + 1) : 2 * y0 + 1 - 2 * tileY * tileSize;
+
+        int nbTerrains = 0;
+        TerrainType lastTerrain = null;
+        for (int n = Math.abs(lastTileX - tileX) + Math.abs(lastTileY - tileY); n >= 0; n--) {
+            boolean isLastTile = tileX == lastTileX && tileY == lastTileY;
+            if (isInside(tileX, tileY)) {
+                int index = tileY * width + tileX;
+
+                if (target != null && getContent(index) == target) {
+                    // the target is reached
+                    return VISIBLE;
+                }
+
+                if (areVehiclesChecked && !isLastTile && getContent(index) instanceof Vehicle
+                        && getContent(index) != observer) {
+                    // hidden behind a vehicle
+                    return HIDDEN;
+                }
+
+                // counts the different obstacles
+                TerrainType terrain = map.getTerrain(index);
+                if (isTerrainChecked && (terrain == null || map.isBlockingVision(index))
+                        && (nbTerrains == 0 || terrain != lastTerrain)) {
+                    lastTerrain = terrain;
+                    nbTerrains++;
+                    int centerX = getCenter(tileX), centerY = getCenter(tileY);
+                    long fromObserver = square(centerX - x0) + square(centerY - y0);
+                    long toDestination = square(centerX - x1) + square(centerY - y1);
+                    if (nbTerrains > 3 || nbTerrains > 1
+                            && (fromObserver > NEAR_OBSTACLE_DISTANCE || toDestination > NEAR_OBSTACLE_DISTANCE)) {
+                        // behind an obstacle
+                        return isLastTile ? HIDDEN_BY_LAST_TILE : HIDDEN;
+                    }
+                }
+            }
+
+            if (isLastTile) {
+                break;
+            }
+
+            // next tile : the closest border along the line
+            long crossX = dx != 0 ? borderX * absDy : Long.MAX_VALUE;
+            long crossY = dy != 0 ? borderY * absDx : Long.MAX_VALUE;
+            if (crossX <= crossY) {
+                tileX += stepX;
+                borderX += 2 * tileSize;
+            }
+            if (crossY <= crossX) {
+                tileY += stepY;
+                borderY += 2 * tileSize;
+            }
+        }
+
+        return VISIBLE;
+    }
+
+    private void addVehicleTile(int index) {
+        if (nbVehicleTiles == vehicleTiles.length) {
+            int[] newVehicleTiles = new int[2 * vehicleTiles.length];
+            System.arraycopy(vehicleTiles, 0, newVehicleTiles, 0, nbVehicleTiles);
+            vehicleTiles = newVehicleTiles;
+        }
+        vehicleTiles[nbVehicleTiles++] = index;
+    }
+
+    private void removeVehicleTile(int index) {
+        for (int n = 0; n < nbVehicleTiles; n++) {
+            if (vehicleTiles[n] == index) {
+                vehicleTiles[n] = vehicleTiles[--nbVehicleTiles];
+                return;
+            }
+        }
+    }
+
+    private GameElement getContent(int index) {
+        int occupantId = map.getOccupantId(index);
+        return occupantId != Map.NO_OCCUPANT ? map.getOccupant(occupantId) : null;
+    }
+
+    private boolean isInside(int tileX, int tileY) {
+        return tileX >= 0 && tileY >= 0 && tileX < width && tileY < height;
+    }
+
+    private static int getCenter(int tileCoordinate) {
+        return tileCoordinate * GameUtils.PIXEL_BY_TILE + GameUtils.PIXEL_BY_TILE / 2;
+    }
+
+    private static int getTileCoordinate(int pixel) {
+        return pixel >= 0 ? pixel / GameUtils.PIXEL_BY_TILE : (pixel + 1) / GameUtils.PIXEL_BY_TILE - 1;
+    }
+
+    private static long square(long value) {
+        return value * value;
+    }
+
+}
@@ -0,0 +1,150 @@
+package com.glevel.wwii.game.logic;
+
+import java.util.Arrays;
+
+import com.glevel.wwii.game.models.UnitStateStore;
+import com.glevel.wwii.game.models.map.Map;
+import com.glevel.wwii.game.models.units.categories.Unit;
+import com.glevel.wwii.game.models.units.categories.Unit.Action;
+
+/**
+ * Lines of sight between units during one tick of the game : each ordered pair
+ * is computed once, the next calls read a flat table indexed by the battle
+ * indexes of the two units. A new tick only increments a generation counter.
+ *
+ * The dice rolled for hiding soldiers only depend on the seed, the tick and the
+ * two units, and the units hiding are the ones of the beginning of the tick : a
+ * line gives the same result whoever computes it first, and whenever during the
+ * tick.
+ */
+public class LineOfSightMemo {
+
+    private final long seed;
+
+    private int capacity = 32;
+    private int generation = 1;
+    private int[] computedAt = new int[capacity * capacity];
+    private boolean[] results = new boolean[capacity * capacity];
+    private boolean[] isHidingAtTickStart = new boolean[capacity];
+
+    private int hits = 0;
+    private int misses = 0;
+
+    public LineOfSightMemo(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Forgets the lines of sight of the previous tick.
+     *
+     * @param store
+     *            units of the battle at the beginning of the tick
+     */
+    public void nextTick(UnitStateStore store) {
+        if (generation == Integer.MAX_VALUE) {
+            for (int n = 0; n < computedAt.length; n++) {
+                computedAt[n] = 0;
+            }
+            generation = 0;
+        }
+        generation++;
+
+        ensureCapacity(store.size());
+        for (int index = 0; index < store.size(); index++) {
+            isHidingAtTickStart[index] = store.getAction(index) == Action.HIDING.ordinal();
+        }
+    }
+
+    /**
+     * @param map
+     * @param observer
+     * @param target
+     *            units of the state store of the battle
+     * @return the result of MapLogic.canSee, the same during the whole tick
+     */
+    public boolean canSee(Map map, Unit observer, Unit target) {
+        int observerIndex = observer.getBattleIndex(), targetIndex = target.getBattleIndex();
+        ensureCapacity(Math.max(observerIndex, targetIndex) + 1);
+        int key = observerIndex * capacity + targetIndex;
+        if (computedAt[key] == generation) {
+            hits++;
+            return results[key];
+        }
+
+        misses++;
+        boolean result = MapLogic.canSee(map, observer, target, roll(observerIndex, targetIndex),
+                isHidingAtTickStart[targetIndex]);
+        results[key] = result;
+        computedAt[key] = generation;
+        return result;
+    }
+
+    /**
+     * Computes the lines of sight from an observer to the alive units of the
+     * other players. ensureCapacity() must have been called before : threads
+     * working on different observers do not write the same entries.
+     *
+     * @param map
+     * @param store
+     * @param observer
+     *            battle index of the observer
+     */
+    public void precompute(Map map, UnitStateStore store, int observer) {
+        int player = store.getPlayer(observer);
+        for (int target = 0; target < store.size(); target++) {
+            if (store.getPlayer(target) != player && !store.isDead(target)) {
+                int key = observer * capacity + target;
+                if (computedAt[key] != generation) {
+                    results[key] = MapLogic.canSee(map, store.getUnit(observer), store.getUnit(target),
+                            roll(observer, target), isHidingAtTickStart[target]);
+                    computedAt[key] = generation;
+                }
+            }
+        }
+    }
+
+    /**
+     * @param nbUnits
+     *            number of units of the battle
+     */
+    public void ensureCapacity(int nbUnits) {
+        if (nbUnits > capacity) {
+            grow(Math.max(nbUnits, 2 * capacity));
+        }
+    }
+
+    public int getHits() {
+        return hits;
+    }
+
+    public int getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return a number in [0, 1) which only depends on the seed, the tick and
+     *         the two units
+     */
+    private float roll(int observerIndex, int targetIndex) {
+        long z = seed + generation * 0x9E3779B97F4A7C15L + ((long) observerIndex << 32 | targetIndex);
+        z = (z ^ z >>> 30) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ z >>> 27) * 0x94D049BB133111EBL;
+        z = z ^ z >>> 31;
+        return (z >>> 40) / (float) (1 << 24);
+    }
+
+    private void grow(int newCapacity) {
+        // the keys change with the capacity : the current tick is kept
+        int[] newComputedAt = new int[newCapacity * newCapacity];
+        boolean[] newResults = new boolean[newComputedAt.length];
+        for (int i = 0; i < capacity; i++) {
+            System.arraycopy(computedAt, i * capacity, newComputedAt, i * newCapacity, capacity);
+            System.arraycopy(results, i * capacity, newResults, i * newCapacity, capacity);
+        }
+        computedAt = newComputedAt;
+        results = newResults;
+        isHidingAtTickStart = Arrays.copyOf(isHidingAtTickStart, newCapacity);
+        capacity = newCapacity;
+    }
+
+}
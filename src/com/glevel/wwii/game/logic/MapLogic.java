@@ -1,33 +1,37 @@
 package com.glevel.wwii.game.logic;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
-
-import org.andengine.entity.sprite.Sprite;
-import org.andengine.extension.tmx.TMXTile;
+import java.util.Set;
 
 import com.glevel.wwii.game.GameUtils;
+import com.glevel.wwii.game.logic.pathfinding.CooperativePathfinder;
+import com.glevel.wwii.game.logic.pathfinding.GridAStar;
+import com.glevel.wwii.game.logic.pathfinding.HierarchicalPath;
+import com.glevel.wwii.game.logic.pathfinding.ReservationTable;
 import com.glevel.wwii.game.models.GameElement;
 import com.glevel.wwii.game.models.map.Map;
+import com.glevel.wwii.game.models.map.MoverClass;
 import com.glevel.wwii.game.models.map.Tile;
-import com.glevel.wwii.game.models.map.Tile.TerrainType;
+import com.glevel.wwii.game.models.map.TileGrid;
+import com.glevel.wwii.game.models.map.WeightedTileGrid;
+import com.glevel.wwii.game.models.orders.MoveOrder;
 import com.glevel.wwii.game.models.units.Soldier;
 import com.glevel.wwii.game.models.units.categories.Unit;
 import com.glevel.wwii.game.models.units.categories.Unit.Action;
-import com.glevel.wwii.game.models.units.categories.Vehicle;
 
 public class MapLogic {
 
-    private static final int RAYCASTER_STEP = 2;// in meters
-    private static final int MINIMAL_DISTANCE_VISIBLE = 10;// in meters
+    static final int MINIMAL_DISTANCE_VISIBLE = 10;// in meters
+    static final int MAXIMAL_DISTANCE_VISIBLE = 64;// in meters
 
     public static float getDistanceBetween(float x1, float y1, float x2, float y2) {
         return (float) Math.sqrt((Math.pow(x1 - x2, 2) + Math.pow(y1 - y2, 2)));
     }
 
     public static float getDistanceBetween(GameElement g1, GameElement g2) {
-        return getDistanceBetween(g1.getSprite().getX(), g1.getSprite().getY(), g2.getSprite().getX(), g2.getSprite()
-                .getY());
+        return getDistanceBetween(g1.getCurrentX(), g1.getCurrentY(), g2.getCurrentX(), g2.getCurrentY());
     }
 
     public static int getDistance(Tile tile1, Tile tile2) {
@@ -35,164 +39,84 @@ public class MapLogic {
     }
 
     public static float getDistanceBetween(GameElement g1, float x, float y) {
-        return getDistanceBetween(g1.getSprite().getX(), g1.getSprite().getY(), x, y);
+        return getDistanceBetween(g1.getCurrentX(), g1.getCurrentY(), x, y);
     }
 
     public static boolean canSee(Map map, GameElement g1, GameElement g2) {
+        return canSee(map, g1, g2, (float) Math.random());
+    }
+
+    /**
+     * @param map
+     * @param g1
+     * @param g2
+     * @param diceRoll
+     *            number in [0, 1) deciding if a hiding soldier is spotted
+     * @return true if g1 can see g2
+     */
+    public static boolean canSee(Map map, GameElement g1, GameElement g2, float diceRoll) {
+        return canSee(map, g1, g2, diceRoll, g2 instanceof Unit && ((Unit) g2).getCurrentAction() == Action.HIDING);
+    }
+
+    /**
+     * @param map
+     * @param g1
+     * @param g2
+     * @param diceRoll
+     *            number in [0, 1) deciding if a hiding soldier is spotted
+     * @param isHiding
+     *            true if g2 is hiding
+     * @return true if g1 can see g2
+     */
+    public static boolean canSee(Map map, GameElement g1, GameElement g2, float diceRoll, boolean isHiding) {
 
         // hiding soldiers are more difficult to see
         if (g2 instanceof Soldier && !g2.isVisible()
                 && getDistanceBetween(g1, g2) > 2 * MINIMAL_DISTANCE_VISIBLE * GameUtils.PIXEL_BY_METER) {
             Unit unit = (Unit) g2;
-            if (unit.getCurrentAction() == Action.HIDING && unit.getTilePosition() != null
-                    && unit.getTilePosition().getTerrain() != null && Math.random() < 0.9f) {
-                return false;
-            }
-        }
-
-        float destinationX = g2.getSprite().getX();
-        float destinationY = g2.getSprite().getY();
-
-        float dx = destinationX - g1.getSprite().getX();
-        float dy = destinationY - g1.getSprite().getY();
-        double angle = Math.atan(dy / dx);
-        boolean hasArrived = false;
-
-        float x = g1.getSprite().getX(), y = g1.getSprite().getY();
-
-        List<TerrainType> lstTerrain = new ArrayList<TerrainType>();
-
-        if (getDistanceBetween(g1, destinationX, destinationY) <= MINIMAL_DISTANCE_VISIBLE * GameUtils.PIXEL_BY_METER) {
-            return true;
-        }
-
-        int stepInPixels = RAYCASTER_STEP * GameUtils.PIXEL_BY_METER;
-
-        int n = 0;
-
-        while (!hasArrived) {
-            if (n > 30) {
+            if (isHiding && unit.getTilePosition() != null
+                    && unit.getTilePosition().getTerrain() != null && diceRoll < 0.9f) {
                 return false;
             }
-            // go one step further
-            if (dx > 0) {
-                x += stepInPixels * Math.cos(angle);
-                y += stepInPixels * Math.sin(angle);
-            } else {
-                x += -stepInPixels * Math.cos(angle);
-                y += stepInPixels * Math.sin(angle + Math.PI);
-            }
-
-            dx = destinationX - x;
-            dy = destinationY - y;
-
-            TMXTile tmxTile = map.getTmxLayer().getTMXTileAt(x, y);
-            if (tmxTile != null) {
-                Tile t = map.getTiles()[tmxTile.getTileRow()][tmxTile.getTileColumn()];
-
-                if (t.getContent() != null && t.getContent() == g2) {
-                    return true;
-                }
-
-                if (g2 instanceof Soldier && t.getContent() != null && t.getContent() != g1
-                        && t.getContent() instanceof Vehicle
-                        && Math.sqrt(dx * dx + dy * dy) > GameUtils.PIXEL_BY_METER * 1) {
-                    // target is a soldier and is hidden behind a vehicle
-                    return false;
-                }
-
-                // lists the different different obstacles
-                if ((t.getTerrain() == null || t.getTerrain().isBlockingVision())
-                        && (lstTerrain.size() == 0 || t.getTerrain() != lstTerrain.get(lstTerrain.size() - 1))) {
-                    lstTerrain.add(t.getTerrain());
-                    if (lstTerrain.size() > 3) {
-                        return false;
-                    } else if ((getDistanceBetween(g1, x, y) > GameUtils.PIXEL_BY_METER * 3 || Math.sqrt(dx * dx + dy
-                            * dy) > GameUtils.PIXEL_BY_METER * 3)
-                            && lstTerrain.size() > 1) {
-                        // target is behind an obstacle
-                        return false;
-                    }
-                }
-            }
-
-            if (Math.sqrt(dx * dx + dy * dy) <= stepInPixels) {
-                break;
-            }
-
-            n++;
         }
 
-        return true;
+        return canSee(map, g1, g2, g2.getCurrentX(), g2.getCurrentY(), g2 instanceof Soldier);
     }
 
     public static boolean canSee(Map map, GameElement g1, float destinationX, float destinationY) {
-        float dx = destinationX - g1.getSprite().getX();
-        float dy = destinationY - g1.getSprite().getY();
-        double angle = Math.atan(dy / dx);
-        boolean hasArrived = false;
-
-        float x = g1.getSprite().getX(), y = g1.getSprite().getY();
-
-        List<TerrainType> lstTerrain = new ArrayList<TerrainType>();
+        return canSee(map, g1, null, destinationX, destinationY, true);
+    }
 
-        if (getDistanceBetween(g1, destinationX, destinationY) <= MINIMAL_DISTANCE_VISIBLE * GameUtils.PIXEL_BY_METER) {
+    /**
+     * The terrain part of the line of sight is cached by the map, vehicles are
+     * looked for at query time.
+     * 
+     * @param map
+     * @param g1
+     *            observer
+     * @param g2
+     *            target, or null to look at a position
+     * @param destinationX
+     * @param destinationY
+     * @param canHideBehindVehicles
+     *            true if the target cannot be seen behind a vehicle
+     * @return true if g1 can see the destination
+     */
+    private static boolean canSee(Map map, GameElement g1, GameElement g2, float destinationX, float destinationY,
+            boolean canHideBehindVehicles) {
+        int x0 = (int) g1.getCurrentX(), y0 = (int) g1.getCurrentY();
+        int x1 = (int) destinationX, y1 = (int) destinationY;
+        long distance = square(x1 - x0) + square(y1 - y0);
+        if (distance <= square(MINIMAL_DISTANCE_VISIBLE * GameUtils.PIXEL_BY_METER)) {
             return true;
+        } else if (distance > square(MAXIMAL_DISTANCE_VISIBLE * GameUtils.PIXEL_BY_METER)) {
+            return false;
         }
+        return map.getLineOfSightCache().canSee(x0, y0, x1, y1, g1, g2, canHideBehindVehicles);
+    }
 
-        int stepInPixels = RAYCASTER_STEP * GameUtils.PIXEL_BY_METER;
-
-        int n = 0;
-
-        while (!hasArrived) {
-            if (n > 30) {
-                return false;
-            }
-            // go one step further
-            if (dx > 0) {
-                x += stepInPixels * Math.cos(angle);
-                y += stepInPixels * Math.sin(angle);
-            } else {
-                x += -stepInPixels * Math.cos(angle);
-                y += stepInPixels * Math.sin(angle + Math.PI);
-            }
-
-            dx = destinationX - x;
-            dy = destinationY - y;
-
-            TMXTile tmxTile = map.getTmxLayer().getTMXTileAt(x, y);
-            if (tmxTile != null) {
-                Tile t = map.getTiles()[tmxTile.getTileRow()][tmxTile.getTileColumn()];
-
-                if (t.getContent() != null && t.getContent() != g1 && t.getContent() instanceof Vehicle
-                        && Math.sqrt(dx * dx + dy * dy) > GameUtils.PIXEL_BY_METER * 1) {
-                    // target is hidden behind a vehicle
-                    return false;
-                }
-
-                // lists the different different obstacles
-                if ((t.getTerrain() == null || t.getTerrain().isBlockingVision())
-                        && (lstTerrain.size() == 0 || t.getTerrain() != lstTerrain.get(lstTerrain.size() - 1))) {
-                    lstTerrain.add(t.getTerrain());
-                    if (lstTerrain.size() > 3) {
-                        return false;
-                    } else if ((getDistanceBetween(g1, x, y) > GameUtils.PIXEL_BY_METER * 3 || Math.sqrt(dx * dx + dy
-                            * dy) > GameUtils.PIXEL_BY_METER * 3)
-                            && lstTerrain.size() > 1) {
-                        // target is behind an obstacle
-                        return false;
-                    }
-                }
-            }
-
-            if (Math.sqrt(dx * dx + dy * dy) <= stepInPixels) {
-                break;
-            }
-
-            n++;
-        }
-
-        return true;
+    private static long square(long value) {
+        return value * value;
     }
 
     public static float[] getCoordinatesAfterTranslation(float xPosition, float yPosition, float distance,
@@ -206,16 +130,16 @@ public class MapLogic {
         }
     }
 
-    public static float getAngle(Sprite sprite, float xDestination, float yDestination) {
-        float dx = xDestination - sprite.getX();
-        float dy = yDestination - sprite.getY();
+    public static float getAngle(GameElement gameElement, float xDestination, float yDestination) {
+        float dx = xDestination - gameElement.getCurrentX();
+        float dy = yDestination - gameElement.getCurrentY();
         float finalAngle = (float) (Math.atan(dy / dx) * 180 / Math.PI);
         if (dx > 0) {
             finalAngle += 90;
         } else {
             finalAngle -= 90;
         }
-        return finalAngle - sprite.getRotation();
+        return finalAngle - gameElement.getCurrentRotation();
     }
 
     public static List<Tile> getAdjacentTiles(Map map, Tile centerTile, int step, boolean withDiagonal) {
@@ -237,13 +161,161 @@ public class MapLogic {
         return adjacentTiles;
     }
 
-    public static Tile getTileAtCoordinates(Map map, float x, float y) {
-        TMXTile tmxTile = map.getTmxLayer().getTMXTileAt(x, y);
-        if (tmxTile != null) {
-            return map.getTiles()[tmxTile.getTileRow()][tmxTile.getTileColumn()];
-        } else {
+    /**
+     * Searches a path on the map's hierarchical graph. Paths are cached and
+     * shared by the units of the same kind going from the same tile to the
+     * same destination.
+     * 
+     * @param map
+     * @param unit
+     * @param destination
+     * @return the tiles' indexes from the unit's tile to the destination (both
+     *         included), which must not be modified, or null if the
+     *         destination cannot be reached
+     */
+    public static int[] findPath(Map map, Unit unit, Tile destination) {
+        MoverClass moverClass = unit.getMoverClass();
+        int source = map.getIndex(unit.getTilePosition());
+        int target = map.getIndex(destination);
+        if (!map.isReachable(source, target, moverClass)) {
             return null;
         }
+
+        int[] path = map.getPathCache().get(source, target, moverClass.ordinal());
+        if (path == null) {
+            HierarchicalPath hierarchicalPath = map.getHierarchicalPathfinder(moverClass).findPath(
+                    new TileGrid(map, moverClass, unit), source, target);
+            if (hierarchicalPath == null) {
+                return null;
+            }
+            int[] cells = hierarchicalPath.refineAll();
+            if (cells == null) {
+                return null;
+            }
+            path = new int[cells.length + 1];
+            path[0] = source;
+            System.arraycopy(cells, 0, path, 1, cells.length);
+            map.getPathCache().put(source, target, moverClass.ordinal(), path);
+        }
+        return path;
+    }
+
+    /**
+     * Looks for the goal which is the closest by path in one search. Goals can
+     * be objectives, cover tiles, enemy positions...
+     * 
+     * @param map
+     * @param unit
+     * @param goals
+     * @return the path to the closest goal (which is its last tile) or null if
+     *         no goal can be reached
+     */
+    public static int[] findPathToNearest(Map map, Unit unit, List<Tile> goals) {
+        if (unit.getTilePosition() == null) {
+            return null;
+        }
+        MoverClass moverClass = unit.getMoverClass();
+        int source = map.getIndex(unit.getTilePosition());
+
+        // goals which cannot be reached are not searched
+        int[] targets = new int[goals.size()];
+        int nbTargets = 0;
+        for (Tile goal : goals) {
+            int target = map.getIndex(goal);
+            if (map.isReachable(source, target, moverClass)) {
+                targets[nbTargets++] = target;
+            }
+        }
+        if (nbTargets == 0) {
+            return null;
+        }
+        if (nbTargets < targets.length) {
+            int[] reachableTargets = new int[nbTargets];
+            System.arraycopy(targets, 0, reachableTargets, 0, nbTargets);
+            targets = reachableTargets;
+        }
+
+        GridAStar aStar = map.getGridAStar();
+        aStar.setHeuristic(map.getLandmarkHeuristic(moverClass));
+        if (aStar.searchNearest(new TileGrid(map, moverClass, unit), new int[] { source }, targets, true) < 0) {
+            return null;
+        }
+        int[] path = new int[aStar.getPathLength()];
+        System.arraycopy(aStar.getPath(), 0, path, 0, path.length);
+        return path;
+    }
+
+    /**
+     * Plans the paths of a group of units together (WHCA*) so they do not
+     * block each other. The other units are considered as static.
+     * 
+     * @param map
+     * @param pathfinder
+     * @param units
+     * @param destinations
+     *            destination of each unit
+     * @return the path of each unit, one tile by tick, or null if its
+     *         destination cannot be reached. Paths stop at the end of the
+     *         window of the pathfinder
+     */
+    public static int[][] findCooperativePaths(Map map, CooperativePathfinder pathfinder, List<Unit> units,
+            List<Tile> destinations) {
+        ReservationTable reservations = pathfinder.getReservations();
+        reservations.clear();
+
+        // the other units keep their tiles : every tile of a footprint holds
+        // its unit, so each one only reserves itself
+        int others = units.size();
+        Set<Unit> plannedUnits = new HashSet<Unit>(units);
+        for (int index = 0; index < map.getWidth() * map.getHeight(); index++) {
+            GameElement content = map.getTile(index).getContent();
+            if (content != null && !plannedUnits.contains(content)) {
+                reservations.reserve(index, ReservationTable.ALWAYS, others);
+            }
+        }
+
+        int[][] paths = new int[units.size()][];
+        for (int n = 0; n < units.size(); n++) {
+            Unit unit = units.get(n);
+            if (unit.getTilePosition() == null) {
+                continue;
+            }
+            MoverClass moverClass = unit.getMoverClass();
+            int source = map.getIndex(unit.getTilePosition());
+            int target = map.getIndex(destinations.get(n));
+            if (map.isReachable(source, target, moverClass)) {
+                paths[n] = pathfinder.search(new WeightedTileGrid(map, moverClass), n,
+                        moverClass.getFootprintRadius(), source, target, true);
+            }
+        }
+        return paths;
+    }
+
+    /**
+     * If the destination cannot be reached, the unit is sent to the closest
+     * tile which can be reached instead.
+     * 
+     * @param map
+     * @param unit
+     * @param x
+     * @param y
+     * @return the move order
+     */
+    public static MoveOrder getReachableMoveOrder(Map map, Unit unit, float x, float y) {
+        Tile destination = getTileAtCoordinates(map, x, y);
+        if (destination == null || unit.getTilePosition() == null) {
+            return new MoveOrder(x, y);
+        }
+        Tile reachableTile = map.getClosestReachableTile(unit.getTilePosition(), destination, unit.getMoverClass());
+        if (reachableTile == destination) {
+            return new MoveOrder(x, y);
+        }
+        return new MoveOrder((reachableTile.getX() + 0.5f) * GameUtils.PIXEL_BY_TILE, (reachableTile.getY() + 0.5f)
+                * GameUtils.PIXEL_BY_TILE);
+    }
+
+    public static Tile getTileAtCoordinates(Map map, float x, float y) {
+        return map.getTileAtCoordinates(x, y);
     }
 
 }
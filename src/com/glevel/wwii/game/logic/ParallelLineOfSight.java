@@ -0,0 +1,127 @@
+package com.glevel.wwii.game.logic;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import com.glevel.wwii.game.models.Battle;
+import com.glevel.wwii.game.models.UnitStateStore;
+import com.glevel.wwii.game.models.map.Map;
+
+/**
+ * First phase of a tick : nothing moves, so the lines of sight between the
+ * enemies are computed by several threads and kept in the memo of the tick.
+ * The orders are then resolved one unit after the other, always in the same
+ * order, reading the memo : the result of a tick does not depend on the number
+ * of threads.
+ *
+ * With a single thread or a small battle, nothing is computed in advance : the
+ * memo computes the lines of sight actually asked by the units.
+ */
+public class ParallelLineOfSight {
+
+    // below, waking up the threads costs more than the lines of sight
+    private static final int MIN_OBSERVERS_BY_TASK = 16;
+
+    private final int nbThreads;
+    private final ExecutorService executor;
+
+    /**
+     * @param nbThreads
+     *            1 to compute everything in the calling thread
+     */
+    public ParallelLineOfSight(int nbThreads) {
+        this.nbThreads = Math.max(1, nbThreads);
+        if (this.nbThreads > 1) {
+            this.executor = Executors.newFixedThreadPool(this.nbThreads, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "line-of-sight");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        } else {
+            this.executor = null;
+        }
+    }
+
+    /**
+     * Fills the memo with the lines of sight of every alive unit to its
+     * enemies, if there are enough units for several threads.
+     *
+     * @param battle
+     */
+    public void compute(Battle battle) {
+        if (executor == null) {
+            return;
+        }
+        final Map map = battle.getMap();
+        final LineOfSightMemo memo = battle.getLineOfSightMemo();
+        final UnitStateStore store = battle.getUnitStateStore();
+        memo.ensureCapacity(store.size());
+
+        // indexes of the alive units, in the order of the store
+        final int[] observers = new int[store.size()];
+        int nbObservers = 0;
+        for (int index = 0; index < store.size(); index++) {
+            if (!store.isDead(index)) {
+                observers[nbObservers++] = index;
+            }
+        }
+
+        int nbTasks = Math.min(nbThreads, nbObservers / MIN_OBSERVERS_BY_TASK);
+        if (nbTasks < 2) {
+            return;
+        }
+
+        // one observer out of nbTasks for each task : each task writes its
+        // own rows of the memo
+        final int step = nbTasks;
+        final int size = nbObservers;
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        for (int n = 0; n < nbTasks; n++) {
+            final int first = n;
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    for (int i = first; i < size; i += step) {
+                        memo.precompute(map, store, observers[i]);
+                    }
+                    return null;
+                }
+            });
+        }
+
+        try {
+            for (Future<Void> future : executor.invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            // some tasks may still be writing : the tick cannot go on
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    public int getNbThreads() {
+        return nbThreads;
+    }
+
+    /**
+     * Stops the threads.
+     */
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+}
@@ -0,0 +1,214 @@
+package com.glevel.wwii.game.logic;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+
+import com.glevel.wwii.game.interfaces.OnPathFound;
+import com.glevel.wwii.game.logic.pathfinding.GridAStar;
+import com.glevel.wwii.game.logic.pathfinding.GridAStar.SearchStatus;
+import com.glevel.wwii.game.logic.pathfinding.PathSmoother;
+import com.glevel.wwii.game.models.map.Map;
+import com.glevel.wwii.game.models.map.MoverClass;
+import com.glevel.wwii.game.models.map.Tile;
+import com.glevel.wwii.game.models.map.TileGrid;
+import com.glevel.wwii.game.models.units.categories.Unit;
+
+/**
+ * Computes the units' paths a bit at each game loop, within a time budget, so
+ * that the game loop is never blocked by the pathfinding. Units keep one
+ * pending request at most and cannot ask again for the same destination too
+ * often. Long paths go through the hierarchical graph of the map, the short
+ * ones are searched on the tiles slice by slice.
+ */
+public class PathRequestService {
+
+    public static final long DEFAULT_BUDGET = 2;// in milliseconds per update
+    public static final int DEFAULT_EXPANSION_BUDGET = 1024;// per update
+    public static final int THROTTLE_DELAY = 5;// in updates
+    private static final int EXPANSIONS_BY_SLICE = 32;
+
+    private final Map map;
+    private final long budgetInNanos;
+    private int expansionBudget = 0;
+    private final GridAStar aStar = new GridAStar();
+    private final LinkedList<PathRequest> requests = new LinkedList<PathRequest>();
+    private final HashMap<Unit, PathRequest> pendingRequests = new HashMap<Unit, PathRequest>();
+    private final HashMap<Unit, PathRequest> lastRequests = new HashMap<Unit, PathRequest>();
+    private PathRequest currentRequest = null;
+    private int nbUpdates = 0;
+
+    private static class PathRequest {
+        private final Unit unit;
+        private final Tile destination;
+        private final OnPathFound callback;
+        private final int notBefore;
+        private int source;
+        private int deliveredAt;
+
+        private PathRequest(Unit unit, Tile destination, OnPathFound callback, int notBefore) {
+            this.unit = unit;
+            this.destination = destination;
+            this.callback = callback;
+            this.notBefore = notBefore;
+        }
+    }
+
+    public PathRequestService(Map map) {
+        this(map, DEFAULT_BUDGET);
+    }
+
+    /**
+     * @param map
+     * @param budget
+     *            time spent on the pathfinding at each update, in milliseconds
+     */
+    public PathRequestService(Map map, long budget) {
+        this.map = map;
+        this.budgetInNanos = budget * 1000000L;
+    }
+
+    /**
+     * Asks for a path. The callback is called during a later update().
+     * 
+     * @param unit
+     * @param destination
+     * @param callback
+     */
+    public void requestPath(Unit unit, Tile destination, OnPathFound callback) {
+        PathRequest pendingRequest = pendingRequests.get(unit);
+        if (pendingRequest != null) {
+            if (pendingRequest.destination == destination) {
+                // same request, already on its way
+                return;
+            }
+            cancel(unit);
+        }
+
+        // same destination as last time : wait a bit before computing again
+        PathRequest lastRequest = lastRequests.get(unit);
+        int notBefore = nbUpdates;
+        if (lastRequest != null && lastRequest.destination == destination) {
+            notBefore = lastRequest.deliveredAt + THROTTLE_DELAY;
+        }
+
+        PathRequest request = new PathRequest(unit, destination, callback, notBefore);
+        pendingRequests.put(unit, request);
+        requests.add(request);
+    }
+
+    /**
+     * Drops the pending request of a unit, if any.
+     * 
+     * @param unit
+     */
+    public void cancel(Unit unit) {
+        PathRequest request = pendingRequests.remove(unit);
+        if (request != null) {
+            requests.remove(request);
+            if (request == currentRequest) {
+                currentRequest = null;
+            }
+        }
+    }
+
+    public int getNbPendingRequests() {
+        return pendingRequests.size();
+    }
+
+    /**
+     * Counts the budget in expanded nodes instead of time : the paths are then
+     * found at the same update whatever the speed of the device.
+     * 
+     * @param expansionBudget
+     *            nodes expanded at each update, 0 to use the time budget
+     */
+    public void setExpansionBudget(int expansionBudget) {
+        this.expansionBudget = expansionBudget;
+    }
+
+    /**
+     * Goes on with the pending requests until the budget is spent.
+     */
+    public void update() {
+        nbUpdates++;
+        long deadline = System.nanoTime() + budgetInNanos;
+        int nbExpansions = 0;
+        while (expansionBudget > 0 ? nbExpansions < expansionBudget : System.nanoTime() < deadline) {
+            if (currentRequest == null && !startNextRequest()) {
+                return;
+            }
+            if (currentRequest == null) {
+                // answered by the cache or the abstract graph
+                continue;
+            }
+
+            SearchStatus status = aStar.resume(EXPANSIONS_BY_SLICE);
+            nbExpansions += EXPANSIONS_BY_SLICE;
+            if (status == SearchStatus.FOUND) {
+                int[] path = new int[aStar.getPathLength()];
+                System.arraycopy(aStar.getPath(), 0, path, 0, path.length);
+                map.getPathCache().put(currentRequest.source, path[path.length - 1],
+                        currentRequest.unit.getMoverClass().ordinal(), path);
+                deliver(currentRequest, path);
+            } else if (status == SearchStatus.NOT_FOUND) {
+                deliver(currentRequest, null);
+            }
+        }
+    }
+
+    /**
+     * @return false if there is no request to start
+     */
+    private boolean startNextRequest() {
+        for (Iterator<PathRequest> iterator = requests.iterator(); iterator.hasNext();) {
+            PathRequest request = iterator.next();
+            if (request.unit.isDead() || request.unit.getTilePosition() == null) {
+                iterator.remove();
+                pendingRequests.remove(request.unit);
+                continue;
+            }
+            if (request.notBefore > nbUpdates) {
+                continue;
+            }
+            iterator.remove();
+
+            MoverClass moverClass = request.unit.getMoverClass();
+            request.source = map.getIndex(request.unit.getTilePosition());
+            int target = map.getIndex(request.destination);
+            if (!map.isReachable(request.source, target, moverClass)) {
+                deliver(request, null);
+                return true;
+            }
+            if (map.getHierarchicalPathfinder(moverClass).isLongQuery(request.source, target)) {
+                // far destination : HPA* in one go, cached too
+                deliver(request, MapLogic.findPath(map, request.unit, request.destination));
+                return true;
+            }
+            int[] path = map.getPathCache().get(request.source, target, moverClass.ordinal());
+            if (path != null) {
+                deliver(request, path);
+            } else {
+                currentRequest = request;
+                aStar.setHeuristic(map.getLandmarkHeuristic(moverClass));
+                aStar.begin(new TileGrid(map, moverClass, request.unit), request.source, target, true, true,
+                        Integer.MAX_VALUE);
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private void deliver(PathRequest request, int[] path) {
+        currentRequest = null;
+        pendingRequests.remove(request.unit);
+        request.deliveredAt = nbUpdates;
+        lastRequests.put(request.unit, request);
+        if (path != null) {
+            // the cache keeps every cell, the unit only needs the waypoints
+            path = PathSmoother.smooth(new TileGrid(map, request.unit.getMoverClass(), request.unit), path);
+        }
+        request.callback.onPathFound(request.destination, path);
+    }
+
+}
@@ -0,0 +1,110 @@
+package com.glevel.wwii.game.logic;
+
+import java.util.Arrays;
+
+import com.glevel.wwii.game.models.UnitStateStore;
+import com.glevel.wwii.game.models.map.Map;
+
+/**
+ * Tiles seen by the units of a team. The field of view of a unit is kept and
+ * only computed again when the unit has changed tile, so the cost of an update
+ * depends on the moves, not on the size of the armies.
+ */
+public class TeamVision {
+
+    private final Map map;
+    private final FieldOfView fieldOfView;
+    private final int nbWords;
+    private final long[] visibleTiles;
+
+    // store the indexes below come from
+    private UnitStateStore store = null;
+    // by battle index : tile of the last field of view and the tiles seen
+    private int[] unitTiles = new int[0];
+    private long[][] unitVisibleTiles = new long[0][];
+    private int nbComputations = 0;
+
+    public TeamVision(Map map) {
+        this.map = map;
+        this.fieldOfView = new FieldOfView(map);
+        this.nbWords = (map.getWidth() * map.getHeight() + 63) >>> 6;
+        this.visibleTiles = new long[nbWords];
+    }
+
+    /**
+     * @param store
+     *            units of the battle
+     * @param player
+     *            index of the team, its dead units see nothing
+     */
+    public void update(UnitStateStore store, int player) {
+        if (store != this.store) {
+            // the store was built again : the indexes may not be the same
+            // units anymore
+            this.store = store;
+            unitTiles = new int[0];
+            unitVisibleTiles = new long[0][];
+            for (int n = 0; n < nbWords; n++) {
+                visibleTiles[n] = 0;
+            }
+        }
+        if (unitTiles.length < store.size()) {
+            int oldLength = unitTiles.length;
+            unitTiles = Arrays.copyOf(unitTiles, store.size());
+            Arrays.fill(unitTiles, oldLength, unitTiles.length, UnitStateStore.NO_TILE);
+            unitVisibleTiles = Arrays.copyOf(unitVisibleTiles, store.size());
+        }
+
+        boolean isChanged = false;
+        for (int index = 0; index < store.size(); index++) {
+            if (store.getPlayer(index) != player) {
+                continue;
+            }
+            int tile = store.isDead(index) ? UnitStateStore.NO_TILE : store.getTile(index);
+            if (tile == unitTiles[index]) {
+                continue;
+            }
+
+            unitTiles[index] = tile;
+            isChanged = true;
+            if (tile != UnitStateStore.NO_TILE) {
+                if (unitVisibleTiles[index] == null) {
+                    unitVisibleTiles[index] = new long[nbWords];
+                }
+                fieldOfView.compute(map.getTile(tile), unitVisibleTiles[index]);
+                nbComputations++;
+            }
+        }
+
+        if (isChanged) {
+            for (int n = 0; n < nbWords; n++) {
+                visibleTiles[n] = 0;
+            }
+            for (int index = 0; index < unitTiles.length; index++) {
+                if (unitTiles[index] != UnitStateStore.NO_TILE) {
+                    long[] unitVision = unitVisibleTiles[index];
+                    for (int n = 0; n < nbWords; n++) {
+                        visibleTiles[n] |= unitVision[n];
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @param index
+     *            tile index
+     * @return true if one of the units sees the tile
+     */
+    public boolean isVisible(int index) {
+        return (visibleTiles[index >>> 6] & 1L << index) != 0;
+    }
+
+    /**
+     * @return the number of fields of view computed so far
+     */
+    public int getNbComputations() {
+        return nbComputations;
+    }
+
+}
@@ -0,0 +1,38 @@
+package com.glevel.wwii.game.logic.pathfinding;
+
+/**
+ * Restricts a SearchGrid to a rectangle (bounds included), used to keep
+ * searches inside one cluster.
+ */
+public class BoundedGrid implements SearchGrid {
+
+    private SearchGrid grid;
+    private int minX, minY, maxX, maxY;
+
+    public void reset(SearchGrid grid, int minX, int minY, int maxX, int maxY) {
+        this.grid = grid;
+        this.minX = minX;
+        this.minY = minY;
+        this.maxX = maxX;
+        this.maxY = maxY;
+    }
+
+    @Override
+    public int getWidth() {
+        return grid.getWidth();
+    }
+
+    @Override
+    public int getHeight() {
+        return grid.getHeight();
+    }
+
+    @Override
+    public boolean isWalkable(int index) {
+        int width = grid.getWidth();
+        int x = index % width;
+        int y = index / width;
+        return x >= minX && x <= maxX && y >= minY && y <= maxY && grid.isWalkable(index);
+    }
+
+}
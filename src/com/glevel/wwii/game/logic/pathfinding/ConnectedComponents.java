@@ -0,0 +1,122 @@
+package com.glevel.wwii.game.logic.pathfinding;
+
+import java.util.Arrays;
+
+/**
+ * Labels the connected areas of walkable cells, so that a cell can be known to
+ * be out of reach without any search.
+ */
+public class ConnectedComponents {
+
+    private final SearchGrid grid;
+    private final boolean allowDiagonalMoves;
+    private final int[] labels;
+    private final int[] queue;
+    private int nbComponents = 0;
+
+    public ConnectedComponents(SearchGrid grid, boolean allowDiagonalMoves) {
+        this.grid = grid;
+        this.allowDiagonalMoves = allowDiagonalMoves;
+        this.labels = new int[grid.getWidth() * grid.getHeight()];
+        this.queue = new int[labels.length];
+        build();
+    }
+
+    /**
+     * Labels all the cells again (flood fill).
+     */
+    public void build() {
+        int width = grid.getWidth();
+        int height = grid.getHeight();
+        int nbDirections = allowDiagonalMoves ? 8 : 4;
+        Arrays.fill(labels, -1);
+        nbComponents = 0;
+
+        for (int seed = 0; seed < labels.length; seed++) {
+            if (labels[seed] >= 0 || !grid.isWalkable(seed)) {
+                continue;
+            }
+
+            // new component
+            int head = 0, tail = 0;
+            labels[seed] = nbComponents;
+            queue[tail++] = seed;
+            while (head < tail) {
+                int current = queue[head++];
+                int x = current % width;
+                int y = current / width;
+                for (int d = 0; d < nbDirections; d++) {
+                    int nx = x + GridAStar.DX[d];
+                    int ny = y + GridAStar.DY[d];
+                    if (nx < 0 || ny < 0 || nx >= width || ny >= height) {
+                        continue;
+                    }
+                    int neighbor = ny * width + nx;
+                    if (labels[neighbor] < 0 && grid.isWalkable(neighbor)) {
+                        labels[neighbor] = nbComponents;
+                        queue[tail++] = neighbor;
+                    }
+                }
+            }
+            nbComponents++;
+        }
+    }
+
+    /**
+     * @param index
+     * @return the component of the cell or -1 if it is not walkable
+     */
+    public int getLabel(int index) {
+        return labels[index];
+    }
+
+    public int getNbComponents() {
+        return nbComponents;
+    }
+
+    public boolean isConnected(int from, int to) {
+        return labels[from] >= 0 && labels[from] == labels[to];
+    }
+
+    /**
+     * Looks for the closest cell of a component, square ring after square
+     * ring.
+     *
+     * @param index
+     * @param label
+     * @return the closest cell of the component (euclidean distance in the
+     *         first ring where one is found) or -1
+     */
+    public int findClosest(int index, int label) {
+        int width = grid.getWidth();
+        int height = grid.getHeight();
+        int x = index % width;
+        int y = index / width;
+        int maxRing = Math.max(Math.max(x, width - 1 - x), Math.max(y, height - 1 - y));
+
+        for (int k = 0; k <= maxRing; k++) {
+            int closest = -1;
+            int closestDistance = Integer.MAX_VALUE;
+            for (int dy = -k; dy <= k; dy++) {
+                int step = dy == -k || dy == k || k == 0 ? 1 : 2 * k;
+                for (int dx = -k; dx <= k; dx += step) {
+                    int nx = x + dx;
+                    int ny = y + dy;
+                    if (nx < 0 || ny < 0 || nx >= width || ny >= height) {
+                        continue;
+                    }
+                    int cell = ny * width + nx;
+                    if (labels[cell] == label && dx * dx + dy * dy < closestDistance) {
+                        closest = cell;
+                        closestDistance = dx * dx + dy * dy;
+                    }
+                }
+            }
+            if (closest >= 0) {
+                return closest;
+            }
+        }
+        return -1;
+    }
+
+}
@@ -0,0 +1,257 @@
+package com.glevel.wwii.game.logic.pathfinding;
+
+/**
+ * Windowed Hierarchical Cooperative A* (WHCA*). Movers are planned one after
+ * the other in space-time : a path is a list of cells, one per tick, which is
+ * reserved in a shared ReservationTable so the next movers go around it, wait
+ * or take turns instead of blocking each other.
+ *
+ * The search looks only windowDepth ticks ahead. Beyond the window, the exact
+ * distance to the target (reservations ignored) is used as the heuristic. It
+ * is computed on demand by a Reverse Resumable A*, which only expands the cells
+ * around the path. A mover cannot go further than windowDepth cells during the
+ * window, so the space-time states are indexed in the square of this size
+ * around the source : the buffers do not depend on the size of the map.
+ */
+public class CooperativePathfinder {
+
+    public static final int DEFAULT_WINDOW_DEPTH = 16;
+
+    private static final float WAIT_COST = GridAStar.STRAIGHT_COST;
+
+    private final ReservationTable reservations;
+    private final int windowDepth;
+    private final ReverseResumableAStar distances = new ReverseResumableAStar();
+    private final IndexedBinaryHeap openSet = new IndexedBinaryHeap();
+
+    // states are (tick * side + localY) * side + localX, the local coordinates
+    // being relative to the corner of the window around the source
+    private final int side;
+    private final int area;
+    private int generation = 0;
+    private final int[] openedAt;
+    private final int[] closedAt;
+    private final int[] parents;
+    private final float[] costs;
+    private int expandedNodes = 0;
+
+    public CooperativePathfinder(ReservationTable reservations, int windowDepth) {
+        this.reservations = reservations;
+        this.windowDepth = windowDepth;
+        this.side = 2 * windowDepth + 1;
+        this.area = side * side;
+        int nbStates = area * (windowDepth + 1);
+        this.openedAt = new int[nbStates];
+        this.closedAt = new int[nbStates];
+        this.parents = new int[nbStates];
+        this.costs = new float[nbStates];
+        this.openSet.ensureCapacity(nbStates);
+    }
+
+    public CooperativePathfinder() {
+        this(new ReservationTable(), DEFAULT_WINDOW_DEPTH);
+    }
+
+    public ReservationTable getReservations() {
+        return reservations;
+    }
+
+    public int getWindowDepth() {
+        return windowDepth;
+    }
+
+    /**
+     * Searches the path of a mover and reserves it.
+     *
+     * @param grid
+     *            cells where the mover fits, the other movers being ignored
+     * @param owner
+     *            mover id in the reservation table
+     * @param radius
+     *            the mover reserves the square of this radius around its cell
+     * @param source
+     * @param target
+     * @param allowDiagonalMoves
+     * @return the cell of the mover at each tick, from tick 0 (source) to the
+     *         target or to the end of the window, or null if the target
+     *         cannot be reached
+     */
+    public int[] search(SearchGrid grid, int owner, int radius, int source, int target, boolean allowDiagonalMoves) {
+        int width = grid.getWidth();
+        int cornerX = source % width - windowDepth;
+        int cornerY = source / width - windowDepth;
+
+        // exact distances to the target, used beyond the window
+        distances.start(grid, target, source, allowDiagonalMoves);
+        float sourceDistance = distances.getDistance(source);
+        if (sourceDistance == Float.MAX_VALUE) {
+            return null;
+        }
+
+        prepare();
+        int first = windowDepth * side + windowDepth;
+        costs[first] = 0;
+        parents[first] = -1;
+        openedAt[first] = generation;
+        openSet.add(first, sourceDistance, sourceDistance);
+
+        int nbDirections = allowDiagonalMoves ? 8 : 4;
+        while (!openSet.isEmpty()) {
+            int current = openSet.poll();
+            closedAt[current] = generation;
+            int tick = current / area;
+            int localX = current % side;
+            int localY = current % area / side;
+            int x = cornerX + localX;
+            int y = cornerY + localY;
+            int cell = y * width + x;
+
+            if (cell == target && isFreeUntilEnd(grid, target, tick, owner, radius) || tick == windowDepth) {
+                int[] path = buildPath(current, width, cornerX, cornerY);
+                reserve(grid, path, cell == target, owner, radius);
+                return path;
+            }
+
+            expandedNodes++;
+            for (int d = -1; d < nbDirections; d++) {
+                // d = -1 : wait in the cell
+                int neighbor = cell;
+                int nextLocal = localY * side + localX;
+                if (d >= 0) {
+                    int nx = x + GridAStar.DX[d];
+                    int ny = y + GridAStar.DY[d];
+                    if (nx < 0 || ny < 0 || nx >= width || ny >= grid.getHeight()) {
+                        continue;
+                    }
+                    neighbor = ny * width + nx;
+                    if (!grid.isWalkable(neighbor) || isSwapped(cell, neighbor, tick, owner)) {
+                        continue;
+                    }
+                    // tick < windowDepth : the neighbor is still in the window
+                    nextLocal = (localY + GridAStar.DY[d]) * side + localX + GridAStar.DX[d];
+                }
+
+                int next = (tick + 1) * area + nextLocal;
+                if (closedAt[next] == generation || !isFree(grid, neighbor, tick + 1, owner, radius)) {
+                    continue;
+                }
+                float h = distances.getDistance(neighbor);
+                if (h == Float.MAX_VALUE) {
+                    continue;
+                }
+
+                float g = costs[current]
+                        + (d < 0 ? WAIT_COST : d < 4 ? GridAStar.STRAIGHT_COST : GridAStar.DIAGONAL_COST);
+                if (openedAt[next] != generation) {
+                    openedAt[next] = generation;
+                    costs[next] = g;
+                    parents[next] = current;
+                    openSet.add(next, g + h, h);
+                } else if (g < costs[next]) {
+                    costs[next] = g;
+                    parents[next] = current;
+                    openSet.decreaseKey(next, g + h, h);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the number of space-time states expanded since the last reset
+     */
+    public int getExpandedNodes() {
+        return expandedNodes;
+    }
+
+    /**
+     * @return the number of cells expanded by the reverse searches of the
+     *         heuristic since the last reset
+     */
+    public int getHeuristicExpandedNodes() {
+        return distances.getExpandedNodes();
+    }
+
+    public void resetExpandedNodes() {
+        expandedNodes = 0;
+        distances.resetExpandedNodes();
+    }
+
+    /**
+     * Two movers cannot go through each other.
+     */
+    private boolean isSwapped(int cell, int neighbor, int tick, int owner) {
+        int other = reservations.getOwner(neighbor, tick);
+        return other != ReservationTable.NONE && other != owner && other == reservations.getOwner(cell, tick + 1);
+    }
+
+    private boolean isFree(SearchGrid grid, int cell, int tick, int owner, int radius) {
+        if (radius == 0) {
+            return reservations.isFree(cell, tick, owner);
+        }
+        int width = grid.getWidth();
+        int x = cell % width;
+        int y = cell / width;
+        int minX = Math.max(0, x - radius), maxX = Math.min(width - 1, x + radius);
+        int minY = Math.max(0, y - radius), maxY = Math.min(grid.getHeight() - 1, y + radius);
+        for (int cellY = minY; cellY <= maxY; cellY++) {
+            for (int cellX = minX; cellX <= maxX; cellX++) {
+                if (!reservations.isFree(cellY * width + cellX, tick, owner)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * A mover stays on its target once it is reached.
+     */
+    private boolean isFreeUntilEnd(SearchGrid grid, int target, int tick, int owner, int radius) {
+        for (int n = tick; n <= windowDepth; n++) {
+            if (!isFree(grid, target, n, owner, radius)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void reserve(SearchGrid grid, int[] path, boolean isTargetReached, int owner, int radius) {
+        int width = grid.getWidth();
+        for (int tick = 0; tick < path.length; tick++) {
+            boolean isLast = tick == path.length - 1;
+            int x = path[tick] % width;
+            int y = path[tick] / width;
+            int minX = Math.max(0, x - radius), maxX = Math.min(width - 1, x + radius);
+            int minY = Math.max(0, y - radius), maxY = Math.min(grid.getHeight() - 1, y + radius);
+            for (int cellY = minY; cellY <= maxY; cellY++) {
+                for (int cellX = minX; cellX <= maxX; cellX++) {
+                    reservations.reserve(cellY * width + cellX, isLast && isTargetReached ? ReservationTable.ALWAYS
+                            : tick, owner);
+                }
+            }
+        }
+    }
+
+    private int[] buildPath(int last, int width, int cornerX, int cornerY) {
+        int[] path = new int[last / area + 1];
+        for (int n = last; n >= 0; n = parents[n]) {
+            path[n / area] = (cornerY + n % area / side) * width + cornerX + n % side;
+        }
+        return path;
+    }
+
+    private void prepare() {
+        openSet.clear();
+
+        if (generation == Integer.MAX_VALUE) {
+            for (int n = 0; n < openedAt.length; n++) {
+                openedAt[n] = 0;
+                closedAt[n] = 0;
+            }
+            generation = 0;
+        }
+        generation++;
+    }
+
+}
@@ -0,0 +1,287 @@
+package com.glevel.wwii.game.logic.pathfinding;
+
+import java.util.Arrays;
+
+/**
+ * D* Lite : keeps a path from a moving start cell to a fixed goal cell and
+ * repairs it when some cells change, reusing the previous search instead of
+ * starting from scratch. The search goes from the goal to the start.
+ */
+public class DStarLite {
+
+    private static final float INFINITY = Float.POSITIVE_INFINITY;
+    // integer costs : keys are compared exactly, float rounding would stop
+    // the search too early
+    private static final int STRAIGHT_COST = 100;
+    private static final int DIAGONAL_COST = 141;
+    // above that, keys are not exact anymore
+    private static final float MAX_KM = 1 << 22;
+
+    private final SearchGrid grid;
+    private final boolean allowDiagonalMoves;
+    private final int width;
+    private final int height;
+    private final int nbDirections;
+
+    private final float[] g;
+    private final float[] rhs;
+    // walkability seen during the last search
+    private final long[] knownWalkable;
+    private final IndexedBinaryHeap openSet = new IndexedBinaryHeap();
+
+    private int start;
+    private int goal;
+    private float km;
+    private int expandedNodes = 0;
+
+    public DStarLite(SearchGrid grid, boolean allowDiagonalMoves) {
+        this.grid = grid;
+        this.allowDiagonalMoves = allowDiagonalMoves;
+        this.width = grid.getWidth();
+        this.height = grid.getHeight();
+        this.nbDirections = allowDiagonalMoves ? 8 : 4;
+        int nbCells = width * height;
+        this.g = new float[nbCells];
+        this.rhs = new float[nbCells];
+        this.knownWalkable = new long[(nbCells + 63) >>> 6];
+        openSet.ensureCapacity(nbCells);
+    }
+
+    /**
+     * Starts a new plan and computes the path.
+     *
+     * @param start
+     * @param goal
+     * @return true if the goal can be reached
+     */
+    public boolean plan(int start, int goal) {
+        this.start = start;
+        this.goal = goal;
+        km = 0;
+        Arrays.fill(g, INFINITY);
+        Arrays.fill(rhs, INFINITY);
+        for (int index = 0; index < g.length; index++) {
+            setKnownWalkable(index, grid.isWalkable(index));
+        }
+        openSet.clear();
+
+        rhs[goal] = 0;
+        openSet.add(goal, estimate(start, goal), 0);
+        return computeShortestPath();
+    }
+
+    /**
+     * Repairs the path after the mover went to another cell and / or some
+     * cells changed. Only the cells which changed since the last search are
+     * updated.
+     *
+     * @param start
+     *            current cell of the mover
+     * @return true if the goal can still be reached
+     */
+    public boolean replan(int start) {
+        km += estimate(this.start, start);
+        this.start = start;
+        if (km > MAX_KM) {
+            return plan(start, goal);
+        }
+
+        for (int index = 0; index < g.length; index++) {
+            boolean isWalkable = grid.isWalkable(index);
+            if (isWalkable != isKnownWalkable(index)) {
+                setKnownWalkable(index, isWalkable);
+                // costs of all the moves from and to this cell changed
+                updateVertex(index);
+                int x = index % width;
+                int y = index / width;
+                for (int d = 0; d < nbDirections; d++) {
+                    int neighbor = getNeighbor(x, y, d);
+                    if (neighbor >= 0) {
+                        updateVertex(neighbor);
+                    }
+                }
+            }
+        }
+
+        return computeShortestPath();
+    }
+
+    public int getGoal() {
+        return goal;
+    }
+
+    /**
+     * @return the cost from the start to the goal, one straight move costing
+     *         1
+     */
+    public float getCost() {
+        return g[start] / STRAIGHT_COST;
+    }
+
+    /**
+     * @param index
+     * @return the best next cell from a cell, or -1
+     */
+    public int getNextCell(int index) {
+        int x = index % width;
+        int y = index / width;
+        int next = -1;
+        float best = INFINITY;
+        for (int d = 0; d < nbDirections; d++) {
+            int neighbor = getNeighbor(x, y, d);
+            if (neighbor >= 0) {
+                float cost = getMoveCost(index, neighbor, d) + g[neighbor];
+                if (cost < best) {
+                    best = cost;
+                    next = neighbor;
+                }
+            }
+        }
+        return next;
+    }
+
+    /**
+     * @return the cells from the start to the goal (both included), or null if
+     *         the goal cannot be reached
+     */
+    public int[] getPath() {
+        if (g[start] == INFINITY) {
+            return null;
+        }
+
+        int length = 1;
+        for (int cell = start; cell != goal && length <= g.length; length++) {
+            cell = getNextCell(cell);
+        }
+        int[] path = new int[length];
+        path[0] = start;
+        for (int n = 1; n < length; n++) {
+            path[n] = getNextCell(path[n - 1]);
+        }
+        return path;
+    }
+
+    /**
+     * @return the number of cells expanded since the last reset
+     */
+    public int getExpandedNodes() {
+        return expandedNodes;
+    }
+
+    public void resetExpandedNodes() {
+        expandedNodes = 0;
+    }
+
+    private boolean computeShortestPath() {
+        while (!openSet.isEmpty()
+                && (isBefore(openSet.peekKey(), openSet.peekTieBreaker(), getKey1(start), getKey2(start)) || rhs[start] != g[start])) {
+            float oldKey1 = openSet.peekKey();
+            float oldKey2 = openSet.peekTieBreaker();
+            int u = openSet.poll();
+            expandedNodes++;
+
+            float key1 = getKey1(u);
+            float key2 = getKey2(u);
+            if (isBefore(oldKey1, oldKey2, key1, key2)) {
+                // outdated key
+                openSet.add(u, key1, key2);
+            } else if (g[u] > rhs[u]) {
+                // overconsistent
+                g[u] = rhs[u];
+                updateNeighbors(u);
+            } else {
+                // underconsistent
+                g[u] = INFINITY;
+                updateVertex(u);
+                updateNeighbors(u);
+            }
+        }
+        return g[start] != INFINITY;
+    }
+
+    private void updateNeighbors(int index) {
+        int x = index % width;
+        int y = index / width;
+        for (int d = 0; d < nbDirections; d++) {
+            int neighbor = getNeighbor(x, y, d);
+            if (neighbor >= 0) {
+                updateVertex(neighbor);
+            }
+        }
+    }
+
+    private void updateVertex(int index) {
+        if (index != goal) {
+            rhs[index] = INFINITY;
+            int x = index % width;
+            int y = index / width;
+            for (int d = 0; d < nbDirections; d++) {
+                int neighbor = getNeighbor(x, y, d);
+                if (neighbor >= 0) {
+                    rhs[index] = Math.min(rhs[index], getMoveCost(index, neighbor, d) + g[neighbor]);
+                }
+            }
+        }
+
+        boolean isOpen = openSet.contains(index);
+        if (g[index] != rhs[index]) {
+            if (isOpen) {
+                openSet.update(index, getKey1(index), getKey2(index));
+            } else {
+                openSet.add(index, getKey1(index), getKey2(index));
+            }
+        } else if (isOpen) {
+            openSet.remove(index);
+        }
+    }
+
+    private float getKey1(int index) {
+        return Math.min(g[index], rhs[index]) + estimate(start, index) + km;
+    }
+
+    private float getKey2(int index) {
+        return Math.min(g[index], rhs[index]);
+    }
+
+    private static boolean isBefore(float key1, float key2, float otherKey1, float otherKey2) {
+        return key1 < otherKey1 || key1 == otherKey1 && key2 < otherKey2;
+    }
+
+    private float getMoveCost(int from, int to, int direction) {
+        if (!isKnownWalkable(from) || !isKnownWalkable(to)) {
+            return INFINITY;
+        }
+        return direction < 4 ? STRAIGHT_COST : DIAGONAL_COST;
+    }
+
+    private float estimate(int from, int to) {
+        int dx = Math.abs(from % width - to % width);
+        int dy = Math.abs(from / width - to / width);
+        if (!allowDiagonalMoves) {
+            return (dx + dy) * STRAIGHT_COST;
+        }
+        return (dx + dy) * STRAIGHT_COST + (DIAGONAL_COST - 2 * STRAIGHT_COST) * Math.min(dx, dy);
+    }
+
+    private int getNeighbor(int x, int y, int direction) {
+        int nx = x + GridAStar.DX[direction];
+        int ny = y + GridAStar.DY[direction];
+        if (nx < 0 || ny < 0 || nx >= width || ny >= height) {
+            return -1;
+        }
+        return ny * width + nx;
+    }
+
+    private boolean isKnownWalkable(int index) {
+        return (knownWalkable[index >>> 6] & 1L << index) != 0;
+    }
+
+    private void setKnownWalkable(int index, boolean isWalkable) {
+        if (isWalkable) {
+            knownWalkable[index >>> 6] |= 1L << index;
+        } else {
+            knownWalkable[index >>> 6] &= ~(1L << index);
+        }
+    }
+
+}
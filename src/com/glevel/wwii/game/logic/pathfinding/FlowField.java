@@ -0,0 +1,212 @@
+package com.glevel.wwii.game.logic.pathfinding;
+
+import java.util.Arrays;
+
+/**
+ * Backwards Dijkstra from a set of target cells : every cell knows its cost to
+ * the closest target and the next cell to go to, so that any number of movers
+ * can be steered in O(1). When the cost of a cell changes, only the cells whose
+ * route went through it are computed again.
+ */
+public class FlowField {
+
+    private final WeightedGrid grid;
+    private final int[] targets;
+    private final int width;
+    private final int height;
+
+    private final float[] costs;
+    private final int[] nextCells;
+    private final int[] stamps;
+    private int generation = 0;
+    private final IndexedBinaryHeap openSet = new IndexedBinaryHeap();
+
+    // cells to compute again, reused between repairs
+    private int[] invalidated = new int[64];
+
+    /**
+     * @param grid
+     * @param targets
+     *            cells the movers have to reach
+     */
+    public FlowField(WeightedGrid grid, int[] targets) {
+        this.grid = grid;
+        this.targets = targets;
+        this.width = grid.getWidth();
+        this.height = grid.getHeight();
+        int nbCells = width * height;
+        this.costs = new float[nbCells];
+        this.nextCells = new int[nbCells];
+        this.stamps = new int[nbCells];
+        openSet.ensureCapacity(nbCells);
+        build();
+    }
+
+    /**
+     * Computes the whole field.
+     */
+    public void build() {
+        Arrays.fill(costs, Float.MAX_VALUE);
+        Arrays.fill(nextCells, -1);
+        nextGeneration();
+        for (int target : targets) {
+            if (grid.isWalkable(target)) {
+                costs[target] = 0;
+                push(target);
+            }
+        }
+        propagate();
+    }
+
+    /**
+     * @param index
+     * @return the next cell toward the closest target, or -1 if the cell is a
+     *         target or cannot reach any
+     */
+    public int getNextCell(int index) {
+        return nextCells[index];
+    }
+
+    /**
+     * @param index
+     * @return the cost to the closest target or Float.MAX_VALUE
+     */
+    public float getCost(int index) {
+        return costs[index];
+    }
+
+    public boolean isTarget(int index) {
+        for (int target : targets) {
+            if (target == index) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Repairs the field after the walkability or the extra cost of a cell
+     * changed.
+     *
+     * @param index
+     */
+    public void onCellChanged(int index) {
+        nextGeneration();
+
+        // the cell and all the cells going through it must be computed again
+        int nbInvalidated = 0;
+        invalidated = ensureSize(invalidated, 1);
+        invalidated[nbInvalidated++] = index;
+        stamps[index] = generation;
+        for (int n = 0; n < nbInvalidated; n++) {
+            int cell = invalidated[n];
+            int x = cell % width;
+            int y = cell / width;
+            for (int d = 0; d < 8; d++) {
+                int neighbor = getNeighbor(x, y, d);
+                if (neighbor >= 0 && nextCells[neighbor] == cell && stamps[neighbor] != generation) {
+                    invalidated = ensureSize(invalidated, nbInvalidated + 1);
+                    invalidated[nbInvalidated++] = neighbor;
+                    stamps[neighbor] = generation;
+                }
+            }
+        }
+
+        for (int n = 0; n < nbInvalidated; n++) {
+            int cell = invalidated[n];
+            costs[cell] = Float.MAX_VALUE;
+            nextCells[cell] = -1;
+        }
+
+        // reconnect invalidated cells to the valid part of the field
+        nextGeneration();
+        for (int n = 0; n < nbInvalidated; n++) {
+            int cell = invalidated[n];
+            if (!grid.isWalkable(cell)) {
+                continue;
+            }
+            if (isTarget(cell)) {
+                costs[cell] = 0;
+            } else {
+                int x = cell % width;
+                int y = cell / width;
+                for (int d = 0; d < 8; d++) {
+                    int neighbor = getNeighbor(x, y, d);
+                    if (neighbor >= 0 && costs[neighbor] < Float.MAX_VALUE) {
+                        float cost = costs[neighbor] + getMoveCost(d, neighbor);
+                        if (cost < costs[cell]) {
+                            costs[cell] = cost;
+                            nextCells[cell] = neighbor;
+                        }
+                    }
+                }
+            }
+            if (costs[cell] < Float.MAX_VALUE) {
+                push(cell);
+            }
+        }
+        propagate();
+    }
+
+    private void propagate() {
+        while (!openSet.isEmpty()) {
+            int current = openSet.poll();
+            // out of the open set
+            stamps[current] = 0;
+            int x = current % width;
+            int y = current / width;
+            for (int d = 0; d < 8; d++) {
+                int neighbor = getNeighbor(x, y, d);
+                if (neighbor < 0 || !grid.isWalkable(neighbor)) {
+                    continue;
+                }
+                // going from neighbor to current is the opposite move
+                float cost = costs[current] + getMoveCost(d, current);
+                if (cost < costs[neighbor]) {
+                    costs[neighbor] = cost;
+                    nextCells[neighbor] = current;
+                    push(neighbor);
+                }
+            }
+        }
+    }
+
+    private void push(int cell) {
+        if (stamps[cell] == generation) {
+            openSet.decreaseKey(cell, costs[cell], 0);
+        } else {
+            stamps[cell] = generation;
+            openSet.add(cell, costs[cell], 0);
+        }
+    }
+
+    private float getMoveCost(int direction, int to) {
+        return (direction < 4 ? GridAStar.STRAIGHT_COST : GridAStar.DIAGONAL_COST) + grid.getExtraCost(to);
+    }
+
+    private int getNeighbor(int x, int y, int direction) {
+        int nx = x + GridAStar.DX[direction];
+        int ny = y + GridAStar.DY[direction];
+        if (nx < 0 || ny < 0 || nx >= width || ny >= height) {
+            return -1;
+        }
+        return ny * width + nx;
+    }
+
+    private void nextGeneration() {
+        if (generation == Integer.MAX_VALUE) {
+            Arrays.fill(stamps, 0);
+            generation = 0;
+        }
+        generation++;
+        openSet.clear();
+    }
+
+    private static int[] ensureSize(int[] array, int size) {
+        if (array.length < size) {
+            return Arrays.copyOf(array, 2 * array.length);
+        }
+        return array;
+    }
+
+}
@@ -0,0 +1,593 @@
+package com.glevel.wwii.game.logic.pathfinding;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A* working on cell indexes (y * width + x) instead of Node objects. g costs,
+ * parents and open / closed states live in primitive arrays which are
+ * invalidated by a generation stamp, so a warmed-up instance does not allocate
+ * anything while searching. One instance must not be shared between threads.
+ */
+public class GridAStar {
+
+    public static final float STRAIGHT_COST = 1.0f;
+    public static final float DIAGONAL_COST = 1.4142135f;
+
+    // beyond this number of targets, searchNearest() is a plain Dijkstra
+    private static final int MAX_ESTIMATED_TARGETS = 16;
+
+    // straight moves first, then diagonal moves
+    static final int[] DX = { 1, 0, -1, 0, 1, -1, -1, 1 };
+    static final int[] DY = { 0, 1, 0, -1, 1, 1, -1, -1 };
+
+    private final IndexedBinaryHeap openSet = new IndexedBinaryHeap();
+
+    private int generation = 0;
+    private int[] openedAt = new int[0];
+    private int[] closedAt = new int[0];
+    private int[] parents = new int[0];
+    private float[] costs = new float[0];
+    private int[] targetedAt = new int[0];
+
+    private int[] path = new int[64];
+    private int pathLength = 0;
+    private boolean isPathPartial = false;
+    private int expandedNodes = 0;
+
+    private NodeGrid nodeGrid;
+    private Heuristic heuristic;
+
+    // search in progress
+    private SearchGrid grid;
+    private int target;
+    // null unless several targets are searched
+    private int[] targets;
+    private boolean allowDiagonalMoves;
+    private boolean useJumpPoints;
+    private int limit;
+    private SearchStatus status = SearchStatus.NOT_FOUND;
+
+    public static enum SearchStatus {
+        SEARCHING, FOUND, NOT_FOUND
+    }
+
+    /**
+     * @param heuristic
+     *            estimate used by the next searches, null for the octile
+     *            distance
+     */
+    public void setHeuristic(Heuristic heuristic) {
+        this.heuristic = heuristic;
+    }
+
+    /**
+     * Drop-in replacement of AStar.search() for the Node / MovingElement
+     * contract. Only the returned list is allocated.
+     *
+     * @return the path from source to target (both included) or null
+     */
+    public <N extends Node> List<N> search(N[][] nodes, N source, N target, boolean allowDiagonalMoves,
+            MovingElement movingElement, int limit) {
+        return search(nodes, source, target, allowDiagonalMoves, false, movingElement, limit);
+    }
+
+    /**
+     * Same as search() but Jump Point Search can be selected.
+     *
+     * @return the path from source to target (both included) or null
+     */
+    @SuppressWarnings("unchecked")
+    public <N extends Node> List<N> search(N[][] nodes, N source, N target, boolean allowDiagonalMoves,
+            boolean useJumpPoints, MovingElement movingElement, int limit) {
+        if (nodeGrid == null) {
+            nodeGrid = new NodeGrid(nodes, movingElement);
+        } else {
+            nodeGrid.reset(nodes, movingElement);
+        }
+
+        if (!search(nodeGrid, nodeGrid.getIndex(source), nodeGrid.getIndex(target), allowDiagonalMoves,
+                useJumpPoints, limit)) {
+            return null;
+        }
+
+        List<N> list = new ArrayList<N>(pathLength);
+        for (int n = 0; n < pathLength; n++) {
+            list.add((N) nodeGrid.getNode(path[n]));
+        }
+        return list;
+    }
+
+    /**
+     * Searches a path between two cells with plain A*.
+     *
+     * @return true if a path is available through getPath()
+     */
+    public boolean search(SearchGrid grid, int source, int target, boolean allowDiagonalMoves, int limit) {
+        return search(grid, source, target, allowDiagonalMoves, false, limit);
+    }
+
+    /**
+     * Searches a path between two cells. Like AStar, the search is stopped as
+     * soon as the open set contains more than limit cells : a partial path to
+     * the current cell is then returned.
+     *
+     * @param grid
+     * @param source
+     * @param target
+     * @param allowDiagonalMoves
+     * @param useJumpPoints
+     *            use Jump Point Search, only when diagonal moves are allowed.
+     *            Same path cost as A*, much less cells expanded on uniform
+     *            grids
+     * @param limit
+     * @return true if a path is available through getPath()
+     */
+    public boolean search(SearchGrid grid, int source, int target, boolean allowDiagonalMoves,
+            boolean useJumpPoints, int limit) {
+        begin(grid, source, target, allowDiagonalMoves, useJumpPoints, limit);
+        return resume(Integer.MAX_VALUE) == SearchStatus.FOUND;
+    }
+
+    /**
+     * Starts a search which is then run step by step with resume(). Same
+     * parameters as search().
+     */
+    public void begin(SearchGrid grid, int source, int target, boolean allowDiagonalMoves, boolean useJumpPoints,
+            int limit) {
+        this.grid = grid;
+        this.target = target;
+        this.targets = null;
+        this.allowDiagonalMoves = allowDiagonalMoves;
+        this.useJumpPoints = useJumpPoints && allowDiagonalMoves;
+        this.limit = limit;
+
+        int width = grid.getWidth();
+        prepare(width * grid.getHeight());
+
+        costs[source] = 0;
+        parents[source] = -1;
+        openedAt[source] = generation;
+        float h = estimate(source);
+        openSet.add(source, h, h);
+        status = SearchStatus.SEARCHING;
+    }
+
+    /**
+     * Goes on with the search started by begin().
+     *
+     * @param maxExpansions
+     *            number of cells to expand before giving the hand back
+     * @return FOUND if a path is available through getPath()
+     */
+    public SearchStatus resume(int maxExpansions) {
+        if (status != SearchStatus.SEARCHING) {
+            return status;
+        }
+
+        int width = grid.getWidth();
+        int nbExpansions = 0;
+        while (!openSet.isEmpty()) {
+            if (nbExpansions >= maxExpansions) {
+                return status;
+            }
+
+            int current = openSet.poll();
+            closedAt[current] = generation;
+
+            boolean isTargetReached = targets == null ? current == target : targetedAt[current] == generation;
+            if (isTargetReached || openSet.size() > limit) {
+                if (useJumpPoints) {
+                    buildJumpPath(current, width);
+                } else {
+                    buildPath(current);
+                }
+                isPathPartial = !isTargetReached;
+                status = SearchStatus.FOUND;
+                return status;
+            }
+
+            expandedNodes++;
+            nbExpansions++;
+            if (useJumpPoints) {
+                expandJumpPoints(current);
+            } else {
+                expandNeighbors(current);
+            }
+        }
+
+        status = SearchStatus.NOT_FOUND;
+        return status;
+    }
+
+    /**
+     * @return the status of the last search
+     */
+    public SearchStatus getStatus() {
+        return status;
+    }
+
+    private void expandNeighbors(int current) {
+        int width = grid.getWidth();
+        int x = current % width;
+        int y = current / width;
+        int nbDirections = allowDiagonalMoves ? 8 : 4;
+        for (int d = 0; d < nbDirections; d++) {
+            int nx = x + DX[d];
+            int ny = y + DY[d];
+            if (nx < 0 || ny < 0 || nx >= width || ny >= grid.getHeight()) {
+                continue;
+            }
+            int neighbor = ny * width + nx;
+            if (closedAt[neighbor] == generation || !grid.isWalkable(neighbor)) {
+                continue;
+            }
+
+            float g = costs[current] + (d < 4 ? STRAIGHT_COST : DIAGONAL_COST);
+            if (openedAt[neighbor] != generation) {
+                // not in the open set
+                openedAt[neighbor] = generation;
+                costs[neighbor] = g;
+                parents[neighbor] = current;
+                float h = estimate(neighbor);
+                openSet.add(neighbor, g + h, h);
+            } else if (g < costs[neighbor]) {
+                // better route to this cell, change its parent
+                costs[neighbor] = g;
+                parents[neighbor] = current;
+                float h = estimate(neighbor);
+                openSet.decreaseKey(neighbor, g + h, h);
+            }
+        }
+    }
+
+    private void expandJumpPoints(int current) {
+        int width = grid.getWidth();
+        int x = current % width;
+        int y = current / width;
+        int parent = parents[current];
+        if (parent < 0) {
+            // source : all the directions
+            for (int d = 0; d < 8; d++) {
+                addJumpPoint(grid, current, jump(grid, x, y, DX[d], DY[d], target), target);
+            }
+            return;
+        }
+
+        // pruned neighbors, given the direction we come from
+        int dx = Integer.signum(x - parent % width);
+        int dy = Integer.signum(y - parent / width);
+        if (dx != 0 && dy != 0) {
+            addJumpPoint(grid, current, jump(grid, x, y, dx, 0, target), target);
+            addJumpPoint(grid, current, jump(grid, x, y, 0, dy, target), target);
+            addJumpPoint(grid, current, jump(grid, x, y, dx, dy, target), target);
+            if (!isWalkable(grid, x - dx, y)) {
+                addJumpPoint(grid, current, jump(grid, x, y, -dx, dy, target), target);
+            }
+            if (!isWalkable(grid, x, y - dy)) {
+                addJumpPoint(grid, current, jump(grid, x, y, dx, -dy, target), target);
+            }
+        } else if (dx != 0) {
+            addJumpPoint(grid, current, jump(grid, x, y, dx, 0, target), target);
+            if (!isWalkable(grid, x, y + 1)) {
+                addJumpPoint(grid, current, jump(grid, x, y, dx, 1, target), target);
+            }
+            if (!isWalkable(grid, x, y - 1)) {
+                addJumpPoint(grid, current, jump(grid, x, y, dx, -1, target), target);
+            }
+        } else {
+            addJumpPoint(grid, current, jump(grid, x, y, 0, dy, target), target);
+            if (!isWalkable(grid, x + 1, y)) {
+                addJumpPoint(grid, current, jump(grid, x, y, 1, dy, target), target);
+            }
+            if (!isWalkable(grid, x - 1, y)) {
+                addJumpPoint(grid, current, jump(grid, x, y, -1, dy, target), target);
+            }
+        }
+    }
+
+    private void addJumpPoint(SearchGrid grid, int current, int jumpPoint, int target) {
+        if (jumpPoint < 0 || closedAt[jumpPoint] == generation) {
+            return;
+        }
+
+        int width = grid.getWidth();
+        int dx = Math.abs(jumpPoint % width - current % width);
+        int dy = Math.abs(jumpPoint / width - current / width);
+        // jump points are always reached in a straight line or a diagonal
+        float g = costs[current] + (dx == 0 || dy == 0 ? (dx + dy) * STRAIGHT_COST : dx * DIAGONAL_COST);
+        if (openedAt[jumpPoint] != generation) {
+            openedAt[jumpPoint] = generation;
+            costs[jumpPoint] = g;
+            parents[jumpPoint] = current;
+            float h = estimate(jumpPoint);
+            openSet.add(jumpPoint, g + h, h);
+        } else if (g < costs[jumpPoint]) {
+            costs[jumpPoint] = g;
+            parents[jumpPoint] = current;
+            float h = estimate(jumpPoint);
+            openSet.decreaseKey(jumpPoint, g + h, h);
+        }
+    }
+
+    /**
+     * Goes from (x, y) in the direction (dx, dy) until a jump point is found.
+     *
+     * @return the jump point or -1 if a wall is hit first
+     */
+    private int jump(SearchGrid grid, int x, int y, int dx, int dy, int target) {
+        int width = grid.getWidth();
+        while (true) {
+            x += dx;
+            y += dy;
+            if (!isWalkable(grid, x, y)) {
+                return -1;
+            }
+            int index = y * width + x;
+            if (index == target) {
+                return index;
+            }
+
+            if (dx != 0 && dy != 0) {
+                // forced neighbors
+                if (isWalkable(grid, x - dx, y + dy) && !isWalkable(grid, x - dx, y)
+                        || isWalkable(grid, x + dx, y - dy) && !isWalkable(grid, x, y - dy)) {
+                    return index;
+                }
+                // a jump point can be reached horizontally or vertically
+                if (jump(grid, x, y, dx, 0, target) >= 0 || jump(grid, x, y, 0, dy, target) >= 0) {
+                    return index;
+                }
+            } else if (dx != 0) {
+                if (isWalkable(grid, x + dx, y + 1) && !isWalkable(grid, x, y + 1)
+                        || isWalkable(grid, x + dx, y - 1) && !isWalkable(grid, x, y - 1)) {
+                    return index;
+                }
+            } else {
+                if (isWalkable(grid, x + 1, y + dy) && !isWalkable(grid, x + 1, y)
+                        || isWalkable(grid, x - 1, y + dy) && !isWalkable(grid, x - 1, y)) {
+                    return index;
+                }
+            }
+        }
+    }
+
+    private static boolean isWalkable(SearchGrid grid, int x, int y) {
+        return x >= 0 && y >= 0 && x < grid.getWidth() && y < grid.getHeight()
+                && grid.isWalkable(y * grid.getWidth() + x);
+    }
+
+    /**
+     * Builds the path cell by cell from the jump points.
+     */
+    private void buildJumpPath(int last, int width) {
+        int length = 1;
+        for (int n = last; parents[n] >= 0; n = parents[n]) {
+            int p = parents[n];
+            length += Math.max(Math.abs(n % width - p % width), Math.abs(n / width - p / width));
+        }
+        if (path.length < length) {
+            path = new int[Math.max(length, 2 * path.length)];
+        }
+        pathLength = length;
+        path[--length] = last;
+        for (int n = last; parents[n] >= 0; n = parents[n]) {
+            int p = parents[n];
+            int dx = Integer.signum(p % width - n % width);
+            int dy = Integer.signum(p / width - n / width);
+            for (int cell = n; cell != p;) {
+                cell += dy * width + dx;
+                path[--length] = cell;
+            }
+        }
+    }
+
+    /**
+     * Searches the closest target from any of the sources in one pass,
+     * instead of one search for each source and target.
+     *
+     * @param grid
+     * @param sources
+     * @param targets
+     * @param allowDiagonalMoves
+     * @return the closest target, whose path is available through getPath(),
+     *         or -1 if no target can be reached
+     */
+    public int searchNearest(SearchGrid grid, int[] sources, int[] targets, boolean allowDiagonalMoves) {
+        this.grid = grid;
+        this.target = -1;
+        this.targets = targets;
+        this.allowDiagonalMoves = allowDiagonalMoves;
+        this.useJumpPoints = false;
+        this.limit = Integer.MAX_VALUE;
+
+        prepare(grid.getWidth() * grid.getHeight());
+        if (targets.length == 0) {
+            return -1;
+        }
+        for (int cell : targets) {
+            targetedAt[cell] = generation;
+        }
+        for (int source : sources) {
+            if (openedAt[source] != generation) {
+                costs[source] = 0;
+                parents[source] = -1;
+                openedAt[source] = generation;
+                float h = estimate(source);
+                openSet.add(source, h, h);
+            }
+        }
+        status = SearchStatus.SEARCHING;
+
+        if (resume(Integer.MAX_VALUE) != SearchStatus.FOUND) {
+            return -1;
+        }
+        return path[pathLength - 1];
+    }
+
+    /**
+     * Computes the cost from source to every reachable cell (Dijkstra). Costs
+     * are then available through getCost().
+     *
+     * @param grid
+     * @param source
+     * @param allowDiagonalMoves
+     */
+    public void flood(SearchGrid grid, int source, boolean allowDiagonalMoves) {
+        int width = grid.getWidth();
+        prepare(width * grid.getHeight());
+
+        costs[source] = 0;
+        parents[source] = -1;
+        openedAt[source] = generation;
+        openSet.add(source, 0, 0);
+
+        int nbDirections = allowDiagonalMoves ? 8 : 4;
+        while (!openSet.isEmpty()) {
+            int current = openSet.poll();
+            closedAt[current] = generation;
+            expandedNodes++;
+
+            int x = current % width;
+            int y = current / width;
+            for (int d = 0; d < nbDirections; d++) {
+                int nx = x + DX[d];
+                int ny = y + DY[d];
+                if (nx < 0 || ny < 0 || nx >= width || ny >= grid.getHeight()) {
+                    continue;
+                }
+                int neighbor = ny * width + nx;
+                if (closedAt[neighbor] == generation || !grid.isWalkable(neighbor)) {
+                    continue;
+                }
+
+                float g = costs[current] + (d < 4 ? STRAIGHT_COST : DIAGONAL_COST);
+                if (openedAt[neighbor] != generation) {
+                    openedAt[neighbor] = generation;
+                    costs[neighbor] = g;
+                    parents[neighbor] = current;
+                    openSet.add(neighbor, g, 0);
+                } else if (g < costs[neighbor]) {
+                    costs[neighbor] = g;
+                    parents[neighbor] = current;
+                    openSet.decreaseKey(neighbor, g, 0);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param index
+     * @return the cost of the cell computed by the last flood(), or
+     *         Float.MAX_VALUE if it was not reached
+     */
+    public float getCost(int index) {
+        return openedAt[index] == generation ? costs[index] : Float.MAX_VALUE;
+    }
+
+    /**
+     * @return the cells of the last path found, from source to target
+     */
+    public int[] getPath() {
+        return path;
+    }
+
+    public int getPathLength() {
+        return pathLength;
+    }
+
+    /**
+     * @return the cost of the last path found
+     */
+    public float getPathCost() {
+        return pathLength > 0 ? costs[path[pathLength - 1]] : 0;
+    }
+
+    /**
+     * @return true if the last search was stopped by its limit
+     */
+    public boolean isPathPartial() {
+        return isPathPartial;
+    }
+
+    /**
+     * @return the number of cells expanded since the last reset
+     */
+    public int getExpandedNodes() {
+        return expandedNodes;
+    }
+
+    public void resetExpandedNodes() {
+        expandedNodes = 0;
+    }
+
+    private void prepare(int nbCells) {
+        if (costs.length < nbCells) {
+            openedAt = new int[nbCells];
+            closedAt = new int[nbCells];
+            parents = new int[nbCells];
+            costs = new float[nbCells];
+            targetedAt = new int[nbCells];
+            generation = 0;
+        }
+        openSet.ensureCapacity(nbCells);
+        openSet.clear();
+
+        if (generation == Integer.MAX_VALUE) {
+            for (int n = 0; n < openedAt.length; n++) {
+                openedAt[n] = 0;
+                closedAt[n] = 0;
+                targetedAt[n] = 0;
+            }
+            generation = 0;
+        }
+        generation++;
+
+        pathLength = 0;
+        isPathPartial = false;
+        status = SearchStatus.NOT_FOUND;
+    }
+
+    private void buildPath(int last) {
+        int length = 0;
+        for (int n = last; n >= 0; n = parents[n]) {
+            length++;
+        }
+        if (path.length < length) {
+            path = new int[Math.max(length, 2 * path.length)];
+        }
+        pathLength = length;
+        for (int n = last; n >= 0; n = parents[n]) {
+            path[--length] = n;
+        }
+    }
+
+    private float estimate(int from) {
+        if (targets != null) {
+            // closest target
+            if (targets.length > MAX_ESTIMATED_TARGETS) {
+                return 0;
+            }
+            float min = Float.MAX_VALUE;
+            for (int cell : targets) {
+                min = Math.min(min, heuristic != null ? heuristic.estimate(from, cell) : estimate(from, cell,
+                        grid.getWidth(), allowDiagonalMoves));
+            }
+            return min;
+        }
+        if (heuristic != null) {
+            return heuristic.estimate(from, target);
+        }
+        return estimate(from, target, grid.getWidth(), allowDiagonalMoves);
+    }
+
+    static float estimate(int from, int to, int width, boolean allowDiagonalMoves) {
+        int dx = Math.abs(from % width - to % width);
+        int dy = Math.abs(from / width - to / width);
+        if (!allowDiagonalMoves) {
+            return (dx + dy) * STRAIGHT_COST;
+        }
+        return (dx + dy) * STRAIGHT_COST + (DIAGONAL_COST - 2 * STRAIGHT_COST) * Math.min(dx, dy);
+    }
+
+}
@@ -0,0 +1,16 @@
+package com.glevel.wwii.game.logic.pathfinding;
+
+/**
+ * Estimate of the cost between two cells used by GridAStar. It must never be
+ * greater than the real cost, or paths are not the shortest anymore.
+ */
+public interface Heuristic {
+
+    /**
+     * @param from
+     * @param to
+     * @return a lower bound of the cost of the path between the two cells
+     */
+    public float estimate(int from, int to);
+
+}
@@ -0,0 +1,81 @@
+package com.glevel.wwii.game.logic.pathfinding;
+
+/**
+ * Path found by the HierarchicalPathfinder. Waypoints are refined into cells
+ * only when they are needed.
+ */
+public class HierarchicalPath {
+
+    private final HierarchicalPathfinder pathfinder;
+    private final SearchGrid queryGrid;
+    private final int[] waypoints;
+    private final boolean isRefined;
+    private int nextWaypoint = 1;
+
+    HierarchicalPath(HierarchicalPathfinder pathfinder, SearchGrid queryGrid, int[] waypoints, boolean isRefined) {
+        this.pathfinder = pathfinder;
+        this.queryGrid = queryGrid;
+        this.waypoints = waypoints;
+        this.isRefined = isRefined;
+    }
+
+    public int getSource() {
+        return waypoints[0];
+    }
+
+    public int getTarget() {
+        return waypoints[waypoints.length - 1];
+    }
+
+    /**
+     * @return the abstract waypoints, from source to target (both included)
+     */
+    public int[] getWaypoints() {
+        return waypoints;
+    }
+
+    public boolean hasNextSegment() {
+        return nextWaypoint < waypoints.length;
+    }
+
+    /**
+     * Refines the next segment of the path.
+     *
+     * @return the cells of the segment (its first cell excluded), or null if
+     *         the segment is now blocked and the path must be computed again
+     */
+    public int[] nextSegment() {
+        if (isRefined) {
+            // flat path : everything is already refined
+            int[] cells = new int[waypoints.length - 1];
+            System.arraycopy(waypoints, 1, cells, 0, cells.length);
+            nextWaypoint = waypoints.length;
+            return cells;
+        }
+
+        int[] cells = pathfinder.refineSegment(queryGrid, waypoints[nextWaypoint - 1], waypoints[nextWaypoint]);
+        nextWaypoint++;
+        return cells;
+    }
+
+    /**
+     * Refines all the remaining segments.
+     *
+     * @return the remaining cells or null if the path is blocked
+     */
+    public int[] refineAll() {
+        int[] cells = new int[0];
+        while (hasNextSegment()) {
+            int[] segment = nextSegment();
+            if (segment == null) {
+                return null;
+            }
+            int[] concatenation = new int[cells.length + segment.length];
+            System.arraycopy(cells, 0, concatenation, 0, cells.length);
+            System.arraycopy(segment, 0, concatenation, cells.length, segment.length);
+            cells = concatenation;
+        }
+        return cells;
+    }
+
+}
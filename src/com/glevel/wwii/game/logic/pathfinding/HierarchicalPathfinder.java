@@ -0,0 +1,569 @@
+package com.glevel.wwii.game.logic.pathfinding;
+
+/**
+ * HPA* : the grid is divided into square clusters. Entrances between adjacent
+ * clusters are turned into abstract nodes and the costs between the abstract
+ * nodes of a cluster are precomputed, so long queries are answered on this
+ * small abstract graph and refined lazily, segment by segment.
+ *
+ * The abstract graph is built on a shared grid (static terrain + occupancy for
+ * one mover class). When a cell changes, its cluster is marked as dirty and
+ * only this cluster is rebuilt before the next query.
+ */
+public class HierarchicalPathfinder {
+
+    public static final int DEFAULT_CLUSTER_SIZE = 10;
+
+    // entrances larger than this get a transition at each end instead of one
+    // in the middle
+    private static final int MAX_SINGLE_TRANSITION_WIDTH = 6;
+
+    private final SearchGrid grid;
+    private final int width, height;
+    private final int clusterSize;
+    private final int nbClustersX, nbClustersY;
+    private final boolean allowDiagonalMoves;
+
+    private final GridAStar aStar = new GridAStar();
+    private final BoundedGrid boundedGrid = new BoundedGrid();
+
+    private final boolean[] dirtyClusters;
+    private boolean hasDirtyClusters = false;
+
+    // abstract nodes
+    private int nbNodes = 0;
+    private int[] nodeCells = new int[64];
+    private int[] nodeClusters = new int[64];
+    private int[] freeNodes = new int[64];
+    private int nbFreeNodes = 0;
+    private boolean[] freshNodes = new boolean[64];
+    private int[][] edgeTargets = new int[64][];
+    private float[][] edgeCosts = new float[64][];
+    private int[] edgeCounts = new int[64];
+
+    // nodes of each border : east border of cluster c is 2 * c, south border is
+    // 2 * c + 1
+    private final int[][] borderNodes;
+    private final int[] borderNodeCounts;
+
+    // abstract search
+    private final IndexedBinaryHeap openSet = new IndexedBinaryHeap();
+    private int searchGeneration = 0;
+    private int[] searchStamps = new int[0];
+    private int[] searchClosed = new int[0];
+    private int[] searchParents = new int[0];
+    private float[] searchCosts = new float[0];
+    private float[] goalCosts = new float[0];
+    private int[] clusterNodes = new int[64];
+    private int expandedNodes = 0;
+
+    public HierarchicalPathfinder(SearchGrid grid, int clusterSize, boolean allowDiagonalMoves) {
+        this.grid = grid;
+        this.width = grid.getWidth();
+        this.height = grid.getHeight();
+        this.clusterSize = clusterSize;
+        this.nbClustersX = (width + clusterSize - 1) / clusterSize;
+        this.nbClustersY = (height + clusterSize - 1) / clusterSize;
+        this.allowDiagonalMoves = allowDiagonalMoves;
+        this.dirtyClusters = new boolean[nbClustersX * nbClustersY];
+        this.borderNodes = new int[2 * nbClustersX * nbClustersY][];
+        this.borderNodeCounts = new int[borderNodes.length];
+        build();
+    }
+
+    /**
+     * Builds the whole abstract graph.
+     */
+    public void build() {
+        for (int c = 0; c < dirtyClusters.length; c++) {
+            dirtyClusters[c] = true;
+        }
+        hasDirtyClusters = true;
+        rebuildDirtyClusters();
+    }
+
+    /**
+     * Must be called when the walkability of a cell changes. The cluster is
+     * rebuilt before the next query.
+     *
+     * @param index
+     */
+    public void onCellChanged(int index) {
+        dirtyClusters[getCluster(index)] = true;
+        hasDirtyClusters = true;
+    }
+
+    public int getCluster(int index) {
+        return (index / width / clusterSize) * nbClustersX + (index % width) / clusterSize;
+    }
+
+    /**
+     * @param source
+     * @param target
+     * @return true if the clusters of the cells are not adjacent : the query
+     *         goes through the abstract graph
+     */
+    public boolean isLongQuery(int source, int target) {
+        int sourceCluster = getCluster(source);
+        int targetCluster = getCluster(target);
+        return Math.abs(sourceCluster % nbClustersX - targetCluster % nbClustersX) > 1
+                || Math.abs(sourceCluster / nbClustersX - targetCluster / nbClustersX) > 1;
+    }
+
+    /**
+     * Searches a path on the abstract graph. Start and goal are connected to
+     * their cluster with queryGrid, which can let the moving element ignore its
+     * own position.
+     *
+     * @param queryGrid
+     * @param source
+     * @param target
+     * @return the abstract path or null if the target cannot be reached
+     */
+    public HierarchicalPath findPath(SearchGrid queryGrid, int source, int target) {
+        rebuildDirtyClusters();
+
+        if (!isLongQuery(source, target)) {
+            // short query : a flat search is cheap enough
+            return findFlatPath(queryGrid, source, target);
+        }
+        int sourceCluster = getCluster(source);
+        int targetCluster = getCluster(target);
+
+        prepareSearch();
+        int goal = nodeCells.length;
+
+        // connect target to the nodes of its cluster
+        int nbTargetNodes = collectClusterNodes(targetCluster);
+        floodCluster(queryGrid, targetCluster, target);
+        for (int n = 0; n < nbTargetNodes; n++) {
+            goalCosts[clusterNodes[n]] = aStar.getCost(nodeCells[clusterNodes[n]]);
+        }
+
+        // connect source to the nodes of its cluster
+        int nbSourceNodes = collectClusterNodes(sourceCluster);
+        floodCluster(queryGrid, sourceCluster, source);
+        for (int n = 0; n < nbSourceNodes; n++) {
+            int node = clusterNodes[n];
+            float cost = aStar.getCost(nodeCells[node]);
+            if (cost < Float.MAX_VALUE) {
+                open(node, -1, cost, target);
+            }
+        }
+
+        while (!openSet.isEmpty()) {
+            int current = openSet.poll();
+            searchClosed[current] = searchGeneration;
+            expandedNodes++;
+            if (current == goal) {
+                return buildPath(queryGrid, source, target);
+            }
+
+            if (nodeClusters[current] == targetCluster && goalCosts[current] < Float.MAX_VALUE) {
+                relax(goal, current, searchCosts[current] + goalCosts[current], target);
+            }
+
+            int[] targets = edgeTargets[current];
+            float[] costs = edgeCosts[current];
+            for (int e = 0; e < edgeCounts[current]; e++) {
+                int neighbor = targets[e];
+                if (searchClosed[neighbor] != searchGeneration) {
+                    relax(neighbor, current, searchCosts[current] + costs[e], target);
+                }
+            }
+        }
+
+        // entrances only model straight crossings of borders : double check
+        // with a flat search before giving up
+        return findFlatPath(queryGrid, source, target);
+    }
+
+    /**
+     * Refines one segment of an abstract path.
+     *
+     * @param queryGrid
+     * @param from
+     * @param to
+     * @return the cells after from until to (included), or null if the segment
+     *         is blocked
+     */
+    int[] refineSegment(SearchGrid queryGrid, int from, int to) {
+        if (from == to) {
+            return new int[0];
+        }
+        int fromCluster = getCluster(from);
+        if (fromCluster != getCluster(to)) {
+            // transition between two clusters
+            return queryGrid.isWalkable(to) ? new int[] { to } : null;
+        }
+
+        restrictToCluster(queryGrid, fromCluster);
+        if (!aStar.search(boundedGrid, from, to, allowDiagonalMoves, Integer.MAX_VALUE)) {
+            return null;
+        }
+        int[] cells = new int[aStar.getPathLength() - 1];
+        System.arraycopy(aStar.getPath(), 1, cells, 0, cells.length);
+        return cells;
+    }
+
+    public int getNbNodes() {
+        return nbNodes - nbFreeNodes;
+    }
+
+    /**
+     * @return the number of abstract nodes and cells expanded since the last
+     *         reset, refinements and cluster rebuilds included
+     */
+    public int getExpandedNodes() {
+        return expandedNodes + aStar.getExpandedNodes();
+    }
+
+    public void resetExpandedNodes() {
+        expandedNodes = 0;
+        aStar.resetExpandedNodes();
+    }
+
+    private HierarchicalPath findFlatPath(SearchGrid queryGrid, int source, int target) {
+        if (!aStar.search(queryGrid, source, target, allowDiagonalMoves, Integer.MAX_VALUE)) {
+            return null;
+        }
+        int[] cells = new int[aStar.getPathLength()];
+        System.arraycopy(aStar.getPath(), 0, cells, 0, cells.length);
+        return new HierarchicalPath(this, queryGrid, cells, true);
+    }
+
+    private void prepareSearch() {
+        int capacity = nodeCells.length + 1;
+        if (searchStamps.length < capacity) {
+            searchStamps = new int[capacity];
+            searchClosed = new int[capacity];
+            searchParents = new int[capacity];
+            searchCosts = new float[capacity];
+            goalCosts = new float[capacity];
+            searchGeneration = 0;
+        }
+        searchGeneration++;
+        openSet.ensureCapacity(capacity);
+        openSet.clear();
+        for (int n = 0; n < capacity; n++) {
+            goalCosts[n] = Float.MAX_VALUE;
+        }
+    }
+
+    private void open(int node, int parent, float cost, int target) {
+        searchStamps[node] = searchGeneration;
+        searchParents[node] = parent;
+        searchCosts[node] = cost;
+        float h = estimate(node, target);
+        openSet.add(node, cost + h, h);
+    }
+
+    private void relax(int node, int parent, float cost, int target) {
+        if (searchStamps[node] != searchGeneration) {
+            open(node, parent, cost, target);
+        } else if (cost < searchCosts[node]) {
+            searchParents[node] = parent;
+            searchCosts[node] = cost;
+            float h = estimate(node, target);
+            openSet.decreaseKey(node, cost + h, h);
+        }
+    }
+
+    private float estimate(int node, int target) {
+        if (node == nodeCells.length) {
+            return 0;
+        }
+        return GridAStar.estimate(nodeCells[node], target, width, allowDiagonalMoves);
+    }
+
+    private HierarchicalPath buildPath(SearchGrid queryGrid, int source, int target) {
+        int goal = nodeCells.length;
+        int length = 2;
+        for (int n = searchParents[goal]; n >= 0; n = searchParents[n]) {
+            length++;
+        }
+        int[] waypoints = new int[length];
+        waypoints[0] = source;
+        waypoints[length - 1] = target;
+        int w = length - 2;
+        for (int n = searchParents[goal]; n >= 0; n = searchParents[n]) {
+            waypoints[w--] = nodeCells[n];
+        }
+        return new HierarchicalPath(this, queryGrid, waypoints, false);
+    }
+
+    private void rebuildDirtyClusters() {
+        if (!hasDirtyClusters) {
+            return;
+        }
+        hasDirtyClusters = false;
+
+        // remove and recreate the transitions of every dirty border
+        for (int c = 0; c < dirtyClusters.length; c++) {
+            if (dirtyClusters[c]) {
+                forEachBorder(c, true);
+            }
+        }
+        for (int c = 0; c < dirtyClusters.length; c++) {
+            if (dirtyClusters[c]) {
+                forEachBorder(c, false);
+            }
+        }
+
+        // connect the new nodes to the other nodes of their cluster
+        for (int c = 0; c < dirtyClusters.length; c++) {
+            int cx = c % nbClustersX;
+            int cy = c / nbClustersX;
+            if (dirtyClusters[c] || cx > 0 && dirtyClusters[c - 1] || cx < nbClustersX - 1 && dirtyClusters[c + 1]
+                    || cy > 0 && dirtyClusters[c - nbClustersX] || cy < nbClustersY - 1
+                    && dirtyClusters[c + nbClustersX]) {
+                connectFreshNodes(c);
+            }
+        }
+
+        for (int n = 0; n < nbNodes; n++) {
+            freshNodes[n] = false;
+        }
+        for (int c = 0; c < dirtyClusters.length; c++) {
+            dirtyClusters[c] = false;
+        }
+    }
+
+    private void forEachBorder(int cluster, boolean remove) {
+        int cx = cluster % nbClustersX;
+        int cy = cluster / nbClustersX;
+        if (cx < nbClustersX - 1) {
+            updateBorder(2 * cluster, remove);
+        }
+        if (cy < nbClustersY - 1) {
+            updateBorder(2 * cluster + 1, remove);
+        }
+        if (cx > 0) {
+            updateBorder(2 * (cluster - 1), remove);
+        }
+        if (cy > 0) {
+            updateBorder(2 * (cluster - nbClustersX) + 1, remove);
+        }
+    }
+
+    private void updateBorder(int border, boolean remove) {
+        if (remove) {
+            for (int n = 0; n < borderNodeCounts[border]; n++) {
+                removeNode(borderNodes[border][n]);
+            }
+            borderNodeCounts[border] = 0;
+        } else if (borderNodeCounts[border] == 0) {
+            createTransitions(border);
+        }
+    }
+
+    private void createTransitions(int border) {
+        int cluster = border / 2;
+        int cx = cluster % nbClustersX;
+        int cy = cluster / nbClustersX;
+        boolean isEast = border % 2 == 0;
+
+        // cells of the border, on the side of this cluster
+        int first, length, step, otherSide;
+        if (isEast) {
+            int x = Math.min((cx + 1) * clusterSize, width) - 1;
+            first = cy * clusterSize * width + x;
+            length = Math.min(clusterSize, height - cy * clusterSize);
+            step = width;
+            otherSide = 1;
+        } else {
+            int y = Math.min((cy + 1) * clusterSize, height) - 1;
+            first = y * width + cx * clusterSize;
+            length = Math.min(clusterSize, width - cx * clusterSize);
+            step = 1;
+            otherSide = width;
+        }
+
+        int runStart = -1;
+        for (int k = 0; k <= length; k++) {
+            int cell = first + k * step;
+            boolean isOpen = k < length && grid.isWalkable(cell) && grid.isWalkable(cell + otherSide);
+            if (isOpen && runStart < 0) {
+                runStart = k;
+            } else if (!isOpen && runStart >= 0) {
+                int runEnd = k - 1;
+                if (runEnd - runStart + 1 <= MAX_SINGLE_TRANSITION_WIDTH) {
+                    addTransition(border, first + (runStart + runEnd) / 2 * step, otherSide);
+                } else {
+                    addTransition(border, first + runStart * step, otherSide);
+                    addTransition(border, first + runEnd * step, otherSide);
+                }
+                runStart = -1;
+            }
+        }
+    }
+
+    private void addTransition(int border, int cell, int otherSide) {
+        int a = createNode(cell);
+        int b = createNode(cell + otherSide);
+        addEdge(a, b, GridAStar.STRAIGHT_COST);
+        addEdge(b, a, GridAStar.STRAIGHT_COST);
+
+        if (borderNodes[border] == null) {
+            borderNodes[border] = new int[8];
+        } else if (borderNodes[border].length < borderNodeCounts[border] + 2) {
+            int[] nodes = new int[2 * borderNodes[border].length];
+            System.arraycopy(borderNodes[border], 0, nodes, 0, borderNodeCounts[border]);
+            borderNodes[border] = nodes;
+        }
+        borderNodes[border][borderNodeCounts[border]++] = a;
+        borderNodes[border][borderNodeCounts[border]++] = b;
+    }
+
+    private int createNode(int cell) {
+        int node;
+        if (nbFreeNodes > 0) {
+            node = freeNodes[--nbFreeNodes];
+        } else {
+            if (nbNodes == nodeCells.length) {
+                growNodes();
+            }
+            node = nbNodes++;
+        }
+        nodeCells[node] = cell;
+        nodeClusters[node] = getCluster(cell);
+        edgeCounts[node] = 0;
+        freshNodes[node] = true;
+        return node;
+    }
+
+    private void growNodes() {
+        int capacity = 2 * nodeCells.length;
+        int[] cells = new int[capacity];
+        System.arraycopy(nodeCells, 0, cells, 0, nbNodes);
+        nodeCells = cells;
+        int[] clusters = new int[capacity];
+        System.arraycopy(nodeClusters, 0, clusters, 0, nbNodes);
+        nodeClusters = clusters;
+        int[] free = new int[capacity];
+        System.arraycopy(freeNodes, 0, free, 0, nbFreeNodes);
+        freeNodes = free;
+        boolean[] fresh = new boolean[capacity];
+        System.arraycopy(freshNodes, 0, fresh, 0, nbNodes);
+        freshNodes = fresh;
+        int[][] targets = new int[capacity][];
+        System.arraycopy(edgeTargets, 0, targets, 0, nbNodes);
+        edgeTargets = targets;
+        float[][] costs = new float[capacity][];
+        System.arraycopy(edgeCosts, 0, costs, 0, nbNodes);
+        edgeCosts = costs;
+        int[] counts = new int[capacity];
+        System.arraycopy(edgeCounts, 0, counts, 0, nbNodes);
+        edgeCounts = counts;
+    }
+
+    private void removeNode(int node) {
+        for (int e = 0; e < edgeCounts[node]; e++) {
+            removeEdge(edgeTargets[node][e], node);
+        }
+        edgeCounts[node] = 0;
+        nodeCells[node] = -1;
+        nodeClusters[node] = -1;
+        freshNodes[node] = false;
+        freeNodes[nbFreeNodes++] = node;
+    }
+
+    private void addEdge(int from, int to, float cost) {
+        if (edgeTargets[from] == null) {
+            edgeTargets[from] = new int[8];
+            edgeCosts[from] = new float[8];
+        } else if (edgeCounts[from] == edgeTargets[from].length) {
+            int[] targets = new int[2 * edgeCounts[from]];
+            System.arraycopy(edgeTargets[from], 0, targets, 0, edgeCounts[from]);
+            edgeTargets[from] = targets;
+            float[] costs = new float[2 * edgeCounts[from]];
+            System.arraycopy(edgeCosts[from], 0, costs, 0, edgeCounts[from]);
+            edgeCosts[from] = costs;
+        }
+        edgeTargets[from][edgeCounts[from]] = to;
+        edgeCosts[from][edgeCounts[from]] = cost;
+        edgeCounts[from]++;
+    }
+
+    private void removeEdge(int from, int to) {
+        int[] targets = edgeTargets[from];
+        for (int e = 0; e < edgeCounts[from]; e++) {
+            if (targets[e] == to) {
+                int last = --edgeCounts[from];
+                targets[e] = targets[last];
+                edgeCosts[from][e] = edgeCosts[from][last];
+                return;
+            }
+        }
+    }
+
+    /**
+     * Computes the intra-cluster edges between the fresh nodes of a cluster and
+     * all its other nodes.
+     *
+     * @param cluster
+     */
+    private void connectFreshNodes(int cluster) {
+        int nbClusterNodes = collectClusterNodes(cluster);
+        for (int i = 0; i < nbClusterNodes; i++) {
+            int node = clusterNodes[i];
+            if (!freshNodes[node]) {
+                continue;
+            }
+            floodCluster(grid, cluster, nodeCells[node]);
+            for (int j = 0; j < nbClusterNodes; j++) {
+                int other = clusterNodes[j];
+                if (other == node || freshNodes[other] && other < node) {
+                    continue;
+                }
+                float cost = aStar.getCost(nodeCells[other]);
+                if (cost < Float.MAX_VALUE) {
+                    addEdge(node, other, cost);
+                    addEdge(other, node, cost);
+                }
+            }
+        }
+    }
+
+    private int collectClusterNodes(int cluster) {
+        int cx = cluster % nbClustersX;
+        int cy = cluster / nbClustersX;
+        int count = 0;
+        count = collectBorderNodes(cluster, cx < nbClustersX - 1 ? 2 * cluster : -1, count);
+        count = collectBorderNodes(cluster, cy < nbClustersY - 1 ? 2 * cluster + 1 : -1, count);
+        count = collectBorderNodes(cluster, cx > 0 ? 2 * (cluster - 1) : -1, count);
+        count = collectBorderNodes(cluster, cy > 0 ? 2 * (cluster - nbClustersX) + 1 : -1, count);
+        return count;
+    }
+
+    private int collectBorderNodes(int cluster, int border, int count) {
+        if (border < 0) {
+            return count;
+        }
+        for (int n = 0; n < borderNodeCounts[border]; n++) {
+            int node = borderNodes[border][n];
+            if (nodeClusters[node] == cluster) {
+                if (count == clusterNodes.length) {
+                    int[] nodes = new int[2 * count];
+                    System.arraycopy(clusterNodes, 0, nodes, 0, count);
+                    clusterNodes = nodes;
+                }
+                clusterNodes[count++] = node;
+            }
+        }
+        return count;
+    }
+
+    private void floodCluster(SearchGrid searchGrid, int cluster, int source) {
+        restrictToCluster(searchGrid, cluster);
+        aStar.flood(boundedGrid, source, allowDiagonalMoves);
+    }
+
+    private void restrictToCluster(SearchGrid searchGrid, int cluster) {
+        int minX = (cluster % nbClustersX) * clusterSize;
+        int minY = (cluster / nbClustersX) * clusterSize;
+        boundedGrid.reset(searchGrid, minX, minY, Math.min(minX + clusterSize, width) - 1,
+                Math.min(minY + clusterSize, height) - 1);
+    }
+
+}
@@ -0,0 +1,173 @@
+package com.glevel.wwii.game.logic.pathfinding;
+
+/**
+ * Binary min-heap of cell indexes supporting decrease-key. Keys are stored by
+ * cell index so that the heap never allocates once it has grown to the size of
+ * the grid.
+ */
+public class IndexedBinaryHeap {
+
+    private int[] heap = new int[0];
+    private int[] positions = new int[0];
+    private float[] keys = new float[0];
+    private float[] tieBreakers = new float[0];
+    private int size = 0;
+
+    /**
+     * Makes sure cells in [0, capacity[ can be stored.
+     *
+     * @param capacity
+     */
+    public void ensureCapacity(int capacity) {
+        if (positions.length < capacity) {
+            heap = new int[capacity];
+            positions = new int[capacity];
+            keys = new float[capacity];
+            tieBreakers = new float[capacity];
+            size = 0;
+        }
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Adds a cell. Among equal keys, the smallest tie breaker is polled first.
+     *
+     * @param index
+     * @param key
+     * @param tieBreaker
+     */
+    public void add(int index, float key, float tieBreaker) {
+        keys[index] = key;
+        tieBreakers[index] = tieBreaker;
+        heap[size] = index;
+        positions[index] = size;
+        size++;
+        siftUp(size - 1);
+    }
+
+    /**
+     * Lowers the key of a cell which is already in the heap.
+     *
+     * @param index
+     * @param key
+     * @param tieBreaker
+     */
+    public void decreaseKey(int index, float key, float tieBreaker) {
+        keys[index] = key;
+        tieBreakers[index] = tieBreaker;
+        siftUp(positions[index]);
+    }
+
+    /**
+     * Changes the key of a cell which is already in the heap.
+     *
+     * @param index
+     * @param key
+     * @param tieBreaker
+     */
+    public void update(int index, float key, float tieBreaker) {
+        keys[index] = key;
+        tieBreakers[index] = tieBreaker;
+        siftUp(positions[index]);
+        siftDown(positions[index]);
+    }
+
+    public boolean contains(int index) {
+        int position = positions[index];
+        return position < size && heap[position] == index;
+    }
+
+    /**
+     * Removes a cell which is in the heap.
+     *
+     * @param index
+     */
+    public void remove(int index) {
+        int position = positions[index];
+        size--;
+        if (position < size) {
+            int last = heap[size];
+            heap[position] = last;
+            positions[last] = position;
+            siftUp(position);
+            siftDown(positions[last]);
+        }
+    }
+
+    public float peekTieBreaker() {
+        return tieBreakers[heap[0]];
+    }
+
+    public int peek() {
+        return heap[0];
+    }
+
+    public float peekKey() {
+        return keys[heap[0]];
+    }
+
+    public int poll() {
+        int first = heap[0];
+        size--;
+        if (size > 0) {
+            heap[0] = heap[size];
+            positions[heap[0]] = 0;
+            siftDown(0);
+        }
+        return first;
+    }
+
+    private boolean isBefore(int a, int b) {
+        return keys[a] < keys[b] || keys[a] == keys[b] && tieBreakers[a] < tieBreakers[b];
+    }
+
+    private void siftUp(int position) {
+        int index = heap[position];
+        while (position > 0) {
+            int parentPosition = (position - 1) >> 1;
+            int parent = heap[parentPosition];
+            if (!isBefore(index, parent)) {
+                break;
+            }
+            heap[position] = parent;
+            positions[parent] = position;
+            position = parentPosition;
+        }
+        heap[position] = index;
+        positions[index] = position;
+    }
+
+    private void siftDown(int position) {
+        int index = heap[position];
+        int half = size >> 1;
+        while (position < half) {
+            int childPosition = 2 * position + 1;
+            int child = heap[childPosition];
+            int rightPosition = childPosition + 1;
+            if (rightPosition < size && isBefore(heap[rightPosition], child)) {
+                childPosition = rightPosition;
+                child = heap[childPosition];
+            }
+            if (!isBefore(child, index)) {
+                break;
+            }
+            heap[position] = child;
+            positions[child] = position;
+            position = childPosition;
+        }
+        heap[position] = index;
+        positions[index] = position;
+    }
+
+}
@@ -0,0 +1,163 @@
+package com.glevel.wwii.game.logic.pathfinding;
+
+/**
+ * ALT heuristic : the exact distances from a few landmark cells are computed
+ * once, then the triangle inequality gives a lower bound of the distance
+ * between any two cells which takes walls and detours into account.
+ *
+ * Distances are stored in fixed point (1 / SCALE of a tile) in a single short
+ * array, the landmarks of a cell being side by side. Diagonal moves are
+ * rounded down so the heuristic stays admissible and consistent. It is only
+ * valid as long as no cell of the grid becomes walkable : it must be built
+ * again when the terrain changes.
+ */
+public class LandmarkHeuristic implements Heuristic {
+
+    public static final int DEFAULT_NB_LANDMARKS = 8;
+
+    private static final int SCALE = 32;
+    private static final int STRAIGHT_COST = SCALE;
+    private static final int DIAGONAL_COST = (int) (SCALE * GridAStar.DIAGONAL_COST);
+    private static final short UNREACHABLE = Short.MAX_VALUE;
+
+    private final int width;
+    private final int nbLandmarks;
+    private final int[] landmarks;
+    private final short[] distances;
+
+    /**
+     * @param grid
+     *            cells which are never walkable, whatever the units
+     * @param nbLandmarks
+     */
+    public LandmarkHeuristic(SearchGrid grid, int nbLandmarks) {
+        this.width = grid.getWidth();
+        int nbCells = width * grid.getHeight();
+        this.nbLandmarks = nbLandmarks;
+        this.landmarks = new int[nbLandmarks];
+        this.distances = new short[nbCells * nbLandmarks];
+
+        // farthest point selection : each landmark is the cell which is the
+        // farthest from the previous ones
+        int[] closestLandmark = new int[nbCells];
+        int[] flood = new int[nbCells];
+        IndexedBinaryHeap openSet = new IndexedBinaryHeap();
+        openSet.ensureCapacity(nbCells);
+        for (int n = 0; n < nbCells; n++) {
+            closestLandmark[n] = Integer.MAX_VALUE;
+        }
+
+        int seed = -1;
+        for (int n = 0; n < nbCells && seed < 0; n++) {
+            if (grid.isWalkable(n)) {
+                seed = n;
+            }
+        }
+        if (seed >= 0) {
+            // the first landmark is on the edge of the map
+            flood(grid, seed, flood, openSet);
+            seed = getFarthestCell(grid, flood);
+        }
+
+        for (int l = 0; l < nbLandmarks; l++) {
+            landmarks[l] = seed;
+            if (seed < 0) {
+                // less walkable cells than landmarks
+                for (int n = 0; n < nbCells; n++) {
+                    distances[n * nbLandmarks + l] = UNREACHABLE;
+                }
+                continue;
+            }
+
+            flood(grid, seed, flood, openSet);
+            for (int n = 0; n < nbCells; n++) {
+                distances[n * nbLandmarks + l] = (short) Math.min(flood[n], UNREACHABLE);
+                closestLandmark[n] = Math.min(closestLandmark[n], flood[n]);
+            }
+            seed = getFarthestCell(grid, closestLandmark);
+        }
+    }
+
+    public LandmarkHeuristic(SearchGrid grid) {
+        this(grid, DEFAULT_NB_LANDMARKS);
+    }
+
+    @Override
+    public float estimate(int from, int to) {
+        int best = 0;
+        int fromOffset = from * nbLandmarks;
+        int toOffset = to * nbLandmarks;
+        for (int l = 0; l < nbLandmarks; l++) {
+            int a = distances[fromOffset + l];
+            int b = distances[toOffset + l];
+            if (a != UNREACHABLE && b != UNREACHABLE) {
+                int d = a > b ? a - b : b - a;
+                if (d > best) {
+                    best = d;
+                }
+            }
+        }
+
+        // never worse than the octile distance
+        return Math.max((float) best / SCALE, GridAStar.estimate(from, to, width, true));
+    }
+
+    /**
+     * @return the landmark cells, -1 if the grid has not enough walkable cells
+     */
+    public int[] getLandmarks() {
+        return landmarks;
+    }
+
+    /**
+     * Dijkstra from the cell with integer costs.
+     */
+    private static void flood(SearchGrid grid, int source, int[] flood, IndexedBinaryHeap openSet) {
+        int width = grid.getWidth();
+        int height = grid.getHeight();
+        for (int n = 0; n < flood.length; n++) {
+            flood[n] = Integer.MAX_VALUE;
+        }
+        openSet.clear();
+        flood[source] = 0;
+        openSet.add(source, 0, 0);
+
+        while (!openSet.isEmpty()) {
+            int current = openSet.poll();
+            int x = current % width;
+            int y = current / width;
+            for (int d = 0; d < 8; d++) {
+                int nx = x + GridAStar.DX[d];
+                int ny = y + GridAStar.DY[d];
+                if (nx < 0 || ny < 0 || nx >= width || ny >= height) {
+                    continue;
+                }
+                int neighbor = ny * width + nx;
+                int g = flood[current] + (d < 4 ? STRAIGHT_COST : DIAGONAL_COST);
+                if (g < flood[neighbor] && grid.isWalkable(neighbor)) {
+                    if (flood[neighbor] == Integer.MAX_VALUE) {
+                        openSet.add(neighbor, g, 0);
+                    } else {
+                        openSet.decreaseKey(neighbor, g, 0);
+                    }
+                    flood[neighbor] = g;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the walkable cell with the highest value, cells which are not
+     *         reached being the farthest, or -1
+     */
+    private static int getFarthestCell(SearchGrid grid, int[] values) {
+        int farthest = -1;
+        for (int n = 0; n < values.length; n++) {
+            if (values[n] > 0 && grid.isWalkable(n) && (farthest < 0 || values[n] > values[farthest])) {
+                farthest = n;
+            }
+        }
+        return farthest;
+    }
+
+}
@@ -0,0 +1,45 @@
+package com.glevel.wwii.game.logic.pathfinding;
+
+/**
+ * Adapts a Node[][] and a MovingElement to the SearchGrid used by the
+ * primitive pathfinding engines.
+ */
+public class NodeGrid implements SearchGrid {
+
+    private Node[][] nodes;
+    private MovingElement movingElement;
+
+    public NodeGrid(Node[][] nodes, MovingElement movingElement) {
+        reset(nodes, movingElement);
+    }
+
+    public void reset(Node[][] nodes, MovingElement movingElement) {
+        this.nodes = nodes;
+        this.movingElement = movingElement;
+    }
+
+    @Override
+    public int getWidth() {
+        return nodes[0].length;
+    }
+
+    @Override
+    public int getHeight() {
+        return nodes.length;
+    }
+
+    @Override
+    public boolean isWalkable(int index) {
+        return movingElement.canMoveIn(getNode(index));
+    }
+
+    public Node getNode(int index) {
+        int width = nodes[0].length;
+        return nodes[index / width][index % width];
+    }
+
+    public int getIndex(Node node) {
+        return node.getY() * nodes[0].length + node.getX();
+    }
+
+}
@@ -0,0 +1,138 @@
+package com.glevel.wwii.game.logic.pathfinding;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Set;
+
+/**
+ * LRU cache of paths keyed by (source cell, target cell, mover class). Each
+ * cell knows the paths going through it, so that only those are dropped when
+ * the cell changes.
+ */
+public class PathCache {
+
+    public static final int DEFAULT_CAPACITY = 256;
+
+    private final int nbCells;
+    private final LinkedHashMap<Long, int[]> paths;
+    private final Set<Long>[] keysByCell;
+
+    private int hits = 0;
+    private int misses = 0;
+
+    /**
+     * @param nbCells
+     * @param capacity
+     *            maximum number of paths, least recently used paths are
+     *            evicted first
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public PathCache(int nbCells, final int capacity) {
+        this.nbCells = nbCells;
+        this.keysByCell = new Set[nbCells];
+        this.paths = new LinkedHashMap<Long, int[]>(capacity, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(java.util.Map.Entry<Long, int[]> eldest) {
+                if (size() > capacity) {
+                    unindex(eldest.getKey(), eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * @param source
+     * @param target
+     * @param moverClass
+     * @return the cached cells from source to target (both included), which
+     *         must not be modified, or null
+     */
+    public int[] get(int source, int target, int moverClass) {
+        int[] path = paths.get(getKey(source, target, moverClass));
+        if (path != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return path;
+    }
+
+    /**
+     * @param source
+     * @param target
+     * @param moverClass
+     * @param path
+     *            cells from source to target (both included)
+     */
+    public void put(int source, int target, int moverClass, int[] path) {
+        long key = getKey(source, target, moverClass);
+        int[] previousPath = paths.put(key, path);
+        if (previousPath != null) {
+            unindex(key, previousPath);
+        }
+        for (int cell : path) {
+            if (keysByCell[cell] == null) {
+                keysByCell[cell] = new HashSet<Long>();
+            }
+            keysByCell[cell].add(key);
+        }
+    }
+
+    /**
+     * Drops all the paths going through a cell. Called when the passability of
+     * the cell changes.
+     *
+     * @param cell
+     */
+    public void invalidate(int cell) {
+        Set<Long> keys = keysByCell[cell];
+        if (keys == null || keys.isEmpty()) {
+            return;
+        }
+        keysByCell[cell] = null;
+        for (Long key : keys) {
+            unindex(key, paths.remove(key));
+        }
+    }
+
+    public void clear() {
+        paths.clear();
+        for (int n = 0; n < nbCells; n++) {
+            keysByCell[n] = null;
+        }
+    }
+
+    public int size() {
+        return paths.size();
+    }
+
+    public int getHits() {
+        return hits;
+    }
+
+    public int getMisses() {
+        return misses;
+    }
+
+    public void resetCounters() {
+        hits = 0;
+        misses = 0;
+    }
+
+    private long getKey(int source, int target, int moverClass) {
+        return ((long) moverClass * nbCells + source) * nbCells + target;
+    }
+
+    private void unindex(long key, int[] path) {
+        for (int cell : path) {
+            if (keysByCell[cell] != null) {
+                keysByCell[cell].remove(key);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,93 @@
+package com.glevel.wwii.game.logic.pathfinding;
+
+/**
+ * Any-angle post-processing of grid paths (string pulling) : only the cells
+ * where the straight line is blocked are kept as waypoints.
+ */
+public class PathSmoother {
+
+    private PathSmoother() {
+    }
+
+    /**
+     * @param grid
+     * @param path
+     *            cells from source to target
+     * @param length
+     *            number of cells of the path
+     * @return the waypoints, source and target included
+     */
+    public static int[] smooth(SearchGrid grid, int[] path, int length) {
+        if (length <= 2) {
+            int[] waypoints = new int[length];
+            System.arraycopy(path, 0, waypoints, 0, length);
+            return waypoints;
+        }
+
+        int[] waypoints = new int[length];
+        int nbWaypoints = 0;
+        int anchor = path[0];
+        waypoints[nbWaypoints++] = anchor;
+        for (int n = 2; n < length; n++) {
+            if (!isLineWalkable(grid, anchor, path[n])) {
+                anchor = path[n - 1];
+                waypoints[nbWaypoints++] = anchor;
+            }
+        }
+        waypoints[nbWaypoints++] = path[length - 1];
+
+        int[] smoothedPath = new int[nbWaypoints];
+        System.arraycopy(waypoints, 0, smoothedPath, 0, nbWaypoints);
+        return smoothedPath;
+    }
+
+    public static int[] smooth(SearchGrid grid, int[] path) {
+        return smooth(grid, path, path.length);
+    }
+
+    /**
+     * Integer supercover line between the centers of the two cells : every
+     * cell touched by the segment must be walkable, both cells around a corner
+     * crossed exactly included. The first cell is not tested.
+     *
+     * @param grid
+     * @param from
+     * @param to
+     * @return true if one can go straight from one cell to the other
+     */
+    public static boolean isLineWalkable(SearchGrid grid, int from, int to) {
+        int width = grid.getWidth();
+        int x = from % width;
+        int y = from / width;
+        int nx = Math.abs(to % width - x);
+        int ny = Math.abs(to / width - y);
+        int sx = to % width > x ? 1 : -1;
+        int sy = to / width > y ? 1 : -1;
+
+        for (int ix = 0, iy = 0; ix < nx || iy < ny;) {
+            // which side of the current cell the segment leaves by
+            int decision = (1 + 2 * ix) * ny - (1 + 2 * iy) * nx;
+            if (decision == 0) {
+                // through the corner
+                if (!grid.isWalkable(y * width + x + sx) || !grid.isWalkable((y + sy) * width + x)) {
+                    return false;
+                }
+                x += sx;
+                y += sy;
+                ix++;
+                iy++;
+            } else if (decision < 0) {
+                x += sx;
+                ix++;
+            } else {
+                y += sy;
+                iy++;
+            }
+            if (!grid.isWalkable(y * width + x)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
@@ -0,0 +1,129 @@
+package com.glevel.wwii.game.logic.pathfinding;
+
+import java.util.Arrays;
+
+/**
+ * Space-time reservations of the cells : which mover will be in a cell at a
+ * given tick. Open addressing on (cell, tick) keys, nothing is allocated while
+ * the table does not grow.
+ */
+public class ReservationTable {
+
+    public static final int NONE = -1;
+    // tick of the reservations which do not end
+    public static final int ALWAYS = -1;
+
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private long[] keys;
+    private int[] owners;
+    private int size = 0;
+
+    public ReservationTable() {
+        this(1024);
+    }
+
+    /**
+     * @param capacity
+     *            number of reservations before the table grows
+     */
+    public ReservationTable(int capacity) {
+        int length = 16;
+        while (length < 2 * capacity) {
+            length <<= 1;
+        }
+        keys = new long[length];
+        owners = new int[length];
+        Arrays.fill(keys, EMPTY);
+    }
+
+    /**
+     * @param cell
+     * @param tick
+     *            tick or ALWAYS
+     * @param owner
+     */
+    public void reserve(int cell, int tick, int owner) {
+        if (2 * (size + 1) > keys.length) {
+            grow();
+        }
+        long key = getKey(cell, tick);
+        int slot = getSlot(key, keys.length);
+        while (keys[slot] != EMPTY && keys[slot] != key) {
+            slot = (slot + 1) & (keys.length - 1);
+        }
+        if (keys[slot] == EMPTY) {
+            keys[slot] = key;
+            size++;
+        }
+        owners[slot] = owner;
+    }
+
+    /**
+     * @param cell
+     * @param tick
+     * @return the owner of the cell at this tick or NONE
+     */
+    public int getOwner(int cell, int tick) {
+        int owner = find(getKey(cell, tick));
+        return owner != NONE ? owner : find(getKey(cell, ALWAYS));
+    }
+
+    /**
+     * @return true if nobody else has reserved the cell at this tick
+     */
+    public boolean isFree(int cell, int tick, int owner) {
+        int reservedBy = getOwner(cell, tick);
+        return reservedBy == NONE || reservedBy == owner;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        if (size > 0) {
+            Arrays.fill(keys, EMPTY);
+            size = 0;
+        }
+    }
+
+    private int find(long key) {
+        int slot = getSlot(key, keys.length);
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == key) {
+                return owners[slot];
+            }
+            slot = (slot + 1) & (keys.length - 1);
+        }
+        return NONE;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldOwners = owners;
+        keys = new long[2 * oldKeys.length];
+        owners = new int[keys.length];
+        Arrays.fill(keys, EMPTY);
+        for (int n = 0; n < oldKeys.length; n++) {
+            if (oldKeys[n] != EMPTY) {
+                int slot = getSlot(oldKeys[n], keys.length);
+                while (keys[slot] != EMPTY) {
+                    slot = (slot + 1) & (keys.length - 1);
+                }
+                keys[slot] = oldKeys[n];
+                owners[slot] = oldOwners[n];
+            }
+        }
+    }
+
+    private static long getKey(int cell, int tick) {
+        return (long) tick << 32 | cell & 0xFFFFFFFFL;
+    }
+
+    private static int getSlot(long key, int length) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash >>> 32) & (length - 1);
+    }
+
+}
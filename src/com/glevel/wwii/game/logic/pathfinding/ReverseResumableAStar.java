@@ -0,0 +1,129 @@
+package com.glevel.wwii.game.logic.pathfinding;
+
+/**
+ * Reverse Resumable A* : exact distances to a target, computed on demand. An A*
+ * goes from the target toward the source of the path, and is resumed each time
+ * the distance of a cell which is not closed yet is asked. Only the cells
+ * around the path are expanded, not the whole map.
+ *
+ * The buffers are kept from one search to the other.
+ */
+public class ReverseResumableAStar {
+
+    private final IndexedBinaryHeap openSet = new IndexedBinaryHeap();
+
+    private SearchGrid grid;
+    private int source;
+    private boolean allowDiagonalMoves;
+
+    private int generation = 0;
+    private int[] openedAt = new int[0];
+    private int[] closedAt = new int[0];
+    private float[] costs = new float[0];
+    private int expandedNodes = 0;
+
+    /**
+     * Starts a new search, nothing is expanded yet.
+     *
+     * @param grid
+     * @param target
+     *            cell the distances are computed to
+     * @param source
+     *            cell the reverse search goes toward
+     * @param allowDiagonalMoves
+     */
+    public void start(SearchGrid grid, int target, int source, boolean allowDiagonalMoves) {
+        this.grid = grid;
+        this.source = source;
+        this.allowDiagonalMoves = allowDiagonalMoves;
+        prepare(grid.getWidth() * grid.getHeight());
+
+        float h = GridAStar.estimate(target, source, grid.getWidth(), allowDiagonalMoves);
+        costs[target] = 0;
+        openedAt[target] = generation;
+        openSet.add(target, h, h);
+    }
+
+    /**
+     * @param cell
+     * @return the cost of the shortest path from the cell to the target, or
+     *         Float.MAX_VALUE if the target cannot be reached
+     */
+    public float getDistance(int cell) {
+        if (closedAt[cell] == generation) {
+            return costs[cell];
+        }
+
+        // the heuristic is consistent : a closed cell has its exact cost
+        int width = grid.getWidth();
+        int nbDirections = allowDiagonalMoves ? 8 : 4;
+        while (!openSet.isEmpty()) {
+            int current = openSet.poll();
+            closedAt[current] = generation;
+            expandedNodes++;
+
+            int x = current % width;
+            int y = current / width;
+            for (int d = 0; d < nbDirections; d++) {
+                int nx = x + GridAStar.DX[d];
+                int ny = y + GridAStar.DY[d];
+                if (nx < 0 || ny < 0 || nx >= width || ny >= grid.getHeight()) {
+                    continue;
+                }
+                int neighbor = ny * width + nx;
+                if (closedAt[neighbor] == generation || !grid.isWalkable(neighbor)) {
+                    continue;
+                }
+
+                float g = costs[current] + (d < 4 ? GridAStar.STRAIGHT_COST : GridAStar.DIAGONAL_COST);
+                if (openedAt[neighbor] != generation) {
+                    float h = GridAStar.estimate(neighbor, source, width, allowDiagonalMoves);
+                    openedAt[neighbor] = generation;
+                    costs[neighbor] = g;
+                    openSet.add(neighbor, g + h, h);
+                } else if (g < costs[neighbor]) {
+                    float h = GridAStar.estimate(neighbor, source, width, allowDiagonalMoves);
+                    costs[neighbor] = g;
+                    openSet.decreaseKey(neighbor, g + h, h);
+                }
+            }
+
+            if (current == cell) {
+                return costs[cell];
+            }
+        }
+        return Float.MAX_VALUE;
+    }
+
+    /**
+     * @return the number of cells expanded since the last reset
+     */
+    public int getExpandedNodes() {
+        return expandedNodes;
+    }
+
+    public void resetExpandedNodes() {
+        expandedNodes = 0;
+    }
+
+    private void prepare(int nbCells) {
+        if (costs.length < nbCells) {
+            openedAt = new int[nbCells];
+            closedAt = new int[nbCells];
+            costs = new float[nbCells];
+            generation = 0;
+        }
+        openSet.ensureCapacity(nbCells);
+        openSet.clear();
+
+        if (generation == Integer.MAX_VALUE) {
+            for (int n = 0; n < openedAt.length; n++) {
+                openedAt[n] = 0;
+                closedAt[n] = 0;
+            }
+            generation = 0;
+        }
+        generation++;
+    }
+
+}
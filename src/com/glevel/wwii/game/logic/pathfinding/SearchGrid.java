@@ -0,0 +1,15 @@
+package com.glevel.wwii.game.logic.pathfinding;
+
+/**
+ * Grid seen by the primitive pathfinding engines. Cells are identified by
+ * their index : y * width + x.
+ */
+public interface SearchGrid {
+
+    public abstract int getWidth();
+
+    public abstract int getHeight();
+
+    public abstract boolean isWalkable(int index);
+
+}
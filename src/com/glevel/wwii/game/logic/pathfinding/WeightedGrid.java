@@ -0,0 +1,14 @@
+package com.glevel.wwii.game.logic.pathfinding;
+
+/**
+ * SearchGrid whose walkable cells can be more expensive to go through.
+ */
+public interface WeightedGrid extends SearchGrid {
+
+    /**
+     * @param index
+     * @return the cost added to any move into the cell
+     */
+    public float getExtraCost(int index);
+
+}
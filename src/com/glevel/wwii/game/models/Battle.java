@@ -3,6 +3,7 @@ package com.glevel.wwii.game.models;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 
 import com.glevel.wwii.game.AI;
 import com.glevel.wwii.game.GameUtils;
@@ -11,10 +12,18 @@ import com.glevel.wwii.game.data.ArmiesData;
 import com.glevel.wwii.game.data.BattlesData;
 import com.glevel.wwii.game.interfaces.OnNewSoundToPlay;
 import com.glevel.wwii.game.interfaces.OnNewSpriteToDraw;
-import com.glevel.wwii.game.logic.MapLogic;
+import com.glevel.wwii.game.logic.EventScheduler;
+import com.glevel.wwii.game.logic.LineOfSightMemo;
+import com.glevel.wwii.game.logic.ParallelLineOfSight;
+import com.glevel.wwii.game.logic.PathRequestService;
+import com.glevel.wwii.game.logic.TeamVision;
+import com.glevel.wwii.game.logic.pathfinding.CooperativePathfinder;
 import com.glevel.wwii.game.models.map.Map;
+import com.glevel.wwii.game.models.map.Tile;
 import com.glevel.wwii.game.models.orders.MoveOrder;
+import com.glevel.wwii.game.models.units.Soldier;
 import com.glevel.wwii.game.models.units.categories.Unit;
+import com.glevel.wwii.game.models.units.categories.Unit.Action;
 
 public class Battle implements Serializable {
 
@@ -42,6 +51,16 @@ public class Battle implements Serializable {
 	private boolean hasStarted = false;
 	private transient List<ObjectivePoint> lstObjectives;
 	private transient DifficultyLevel difficultyLevel;
+	private transient PathRequestService pathRequestService;
+	private transient CooperativePathfinder cooperativePathfinder;
+	private transient TeamVision myVision;
+	private transient LineOfSightMemo lineOfSightMemo;
+	private transient ParallelLineOfSight parallelLineOfSight;
+	private transient UnitStateStore unitStateStore;
+	private transient EventScheduler scheduler;
+	private transient Player winner;
+	private transient long seed = System.nanoTime();
+	private transient Random random;
 
 	// Callbacks
 	private transient OnNewSpriteToDraw onNewSprite;
@@ -50,6 +69,7 @@ public class Battle implements Serializable {
 	// for campaign mode
 	private boolean isDone = false;
 	private int gameCounter = 0;
+	private transient int movesCounter = 0;
 
 	public static enum Phase {
 		deployment, combat
@@ -126,6 +146,7 @@ public class Battle implements Serializable {
 
 	public void setPlayers(List<Player> players) {
 		this.players = players;
+		this.unitStateStore = null;
 	}
 
 	public List<Unit> getEnemies(Unit unit) {
@@ -265,30 +286,159 @@ public class Battle implements Serializable {
 		this.lstObjectives = lstObjectives;
 	}
 
+	/**
+	 * @return the number of calls to updateMoves() since the battle was loaded
+	 */
+	public int getMovesCounter() {
+		return movesCounter;
+	}
+
+	/**
+	 * @return the number of updates since the beginning of the battle
+	 */
 	public int getGameCounter() {
 		return gameCounter;
 	}
 
+	public PathRequestService getPathRequestService() {
+		if (pathRequestService == null) {
+			pathRequestService = new PathRequestService(map);
+		}
+		return pathRequestService;
+	}
+
+	public CooperativePathfinder getCooperativePathfinder() {
+		if (cooperativePathfinder == null) {
+			cooperativePathfinder = new CooperativePathfinder();
+		}
+		return cooperativePathfinder;
+	}
+
+	/**
+	 * @return the state of the units, created the first time with the units of
+	 *         the players
+	 */
+	public UnitStateStore getUnitStateStore() {
+		if (unitStateStore == null) {
+			unitStateStore = new UnitStateStore();
+			for (int n = 0; n < players.size(); n++) {
+				for (Unit unit : players.get(n).getUnits()) {
+					Tile tile = unit.getTilePosition();
+					unitStateStore.add(unit, n, tile != null ? map.getIndex(tile) : UnitStateStore.NO_TILE);
+				}
+			}
+		}
+		return unitStateStore;
+	}
+
+	public LineOfSightMemo getLineOfSightMemo() {
+		if (lineOfSightMemo == null) {
+			lineOfSightMemo = new LineOfSightMemo(seed);
+		}
+		return lineOfSightMemo;
+	}
+
+	/**
+	 * Two battles with the same seed and the same orders give the same
+	 * results : the pathfinding budget is then counted in nodes, not in time.
+	 * 
+	 * @param seed
+	 */
+	public void setSeed(long seed) {
+		this.seed = seed;
+		this.random = null;
+		this.lineOfSightMemo = null;
+		getPathRequestService().setExpansionBudget(PathRequestService.DEFAULT_EXPANSION_BUDGET);
+	}
+
+	public long getSeed() {
+		return seed;
+	}
+
+	/**
+	 * @return the dice of the game logic, only used by the thread updating
+	 *         the battle
+	 */
+	public Random getRandom() {
+		if (random == null) {
+			random = new Random(seed);
+		}
+		return random;
+	}
+
+	/**
+	 * @param nbThreads
+	 *            number of threads computing the lines of sight at the
+	 *            beginning of each update. With 1, they are only computed
+	 *            when asked
+	 */
+	public void setNbThreads(int nbThreads) {
+		shutdown();
+		if (nbThreads > 1) {
+			parallelLineOfSight = new ParallelLineOfSight(nbThreads);
+		}
+	}
+
+	/**
+	 * Stops the threads of the battle, if any.
+	 */
+	public void shutdown() {
+		if (parallelLineOfSight != null) {
+			parallelLineOfSight.shutdown();
+			parallelLineOfSight = null;
+		}
+	}
+
+	/**
+	 * Lines of sight are computed once per tick for each pair of units.
+	 * 
+	 * @param observer
+	 * @param target
+	 * @return true if observer can see target
+	 */
+	public boolean canSee(Unit observer, Unit target) {
+		getUnitStateStore();
+		return getLineOfSightMemo().canSee(map, observer, target);
+	}
+
+	/**
+	 * @return the events of the battle, created the first time with the
+	 *         periodic checks of the battle
+	 */
+	public EventScheduler getScheduler() {
+		if (scheduler == null) {
+			scheduler = new EventScheduler(gameCounter);
+			schedulePeriodicEvents();
+		}
+		return scheduler;
+	}
+
 	/**
 	 * Updates Game Logic
 	 * 
 	 * @return winner if any
 	 */
 	public Player update() {
+		getScheduler();
 		gameCounter++;
-		if (gameCounter > 999) {
-			gameCounter = 0;
-		}
-		if (gameCounter % GameUtils.UPDATE_VISION_FREQUENCY == 0) {
-			updateVisibility();
+		getLineOfSightMemo().nextTick(getUnitStateStore());
+
+		// events of the tick : vision, AI, victory, reloads...
+		scheduler.advanceTo(gameCounter);
+		if (winner != null) {
+			return winner;
 		}
 
-		// update AI orders depending on difficulty level
-		if (gameCounter
-				% (GameUtils.AI_FREQUENCY * (difficultyLevel.ordinal() + 1)) == 0) {
-			AI.updateAI(this);
+		// read phase : lines of sight of the units, in parallel. On a single
+		// thread, the memo computes them when they are asked
+		if (parallelLineOfSight != null) {
+			parallelLineOfSight.compute(this);
 		}
 
+		// answer the path requests of the last update
+		getPathRequestService().update();
+
+		// commit phase : orders are resolved in the order of the units
 		for (Player player : players) {
 			for (Unit unit : player.getUnits()) {
 				if (!unit.isDead()) {
@@ -301,52 +451,126 @@ public class Battle implements Serializable {
 					}
 				}
 			}
-			// check victory conditions
-			if (gameCounter % GameUtils.CHECK_VICTORY_FREQUENCY == 0
-					&& player.checkIfPlayerWon(this)) {
-				return player;
-			}
 		}
 
+		return null;
+	}
+
+	/**
+	 * Periodic events run on the multiples of their period and schedule
+	 * themselves again when they run.
+	 */
+	private void schedulePeriodicEvents() {
+		scheduler.schedule(new EventScheduler.Event() {
+			@Override
+			public void run() {
+				updateVisibility();
+				scheduler.schedule(this, GameUtils.UPDATE_VISION_FREQUENCY);
+			}
+		}, getFirstDelay(GameUtils.UPDATE_VISION_FREQUENCY));
+
+		// update AI orders depending on difficulty level
+		scheduler.schedule(new EventScheduler.Event() {
+			@Override
+			public void run() {
+				AI.updateAI(Battle.this);
+				scheduler.schedule(this, getAIPeriod());
+			}
+		}, getFirstDelay(getAIPeriod()));
+
+		// check victory conditions
+		scheduler.schedule(new EventScheduler.Event() {
+			@Override
+			public void run() {
+				for (Player player : players) {
+					if (player.checkIfPlayerWon(Battle.this)) {
+						winner = player;
+						return;
+					}
+				}
+				scheduler.schedule(this, GameUtils.CHECK_VICTORY_FREQUENCY);
+			}
+		}, getFirstDelay(GameUtils.CHECK_VICTORY_FREQUENCY));
+
 		// play random atmoshpere sounds
-		if (gameCounter % GameUtils.ATMO_SOUND_FREQUENCY == 0) {
-			if (Math.random() < 0.2) {
-				String atmoSound = GameUtils.ATMO_SOUNDS[(int) Math.round(Math
-						.random() * (GameUtils.ATMO_SOUNDS.length - 1))];
-				getOnNewSoundToPlay()
-						.playSound(
-								atmoSound,
-								(float) (Math.random() * map.getWidth() * GameUtils.PIXEL_BY_TILE),
-								(float) (Math.random() * map.getHeight() * GameUtils.PIXEL_BY_TILE));
+		scheduler.schedule(new EventScheduler.Event() {
+			@Override
+			public void run() {
+				if (Math.random() < 0.2) {
+					String atmoSound = GameUtils.ATMO_SOUNDS[(int) Math.round(Math
+							.random() * (GameUtils.ATMO_SOUNDS.length - 1))];
+					getOnNewSoundToPlay()
+							.playSound(
+									atmoSound,
+									(float) (Math.random() * map.getWidth() * GameUtils.PIXEL_BY_TILE),
+									(float) (Math.random() * map.getHeight() * GameUtils.PIXEL_BY_TILE));
+				}
+				scheduler.schedule(this, GameUtils.ATMO_SOUND_FREQUENCY);
 			}
-		}
+		}, getFirstDelay(GameUtils.ATMO_SOUND_FREQUENCY));
+	}
 
-		return null;
+	private int getAIPeriod() {
+		return GameUtils.AI_FREQUENCY * (difficultyLevel.ordinal() + 1);
+	}
+
+	/**
+	 * @return the number of ticks until the next multiple of the period
+	 */
+	private int getFirstDelay(int period) {
+		return period - gameCounter % period;
 	}
 
 	/**
 	 * Updates player vision
 	 */
 	public void updateVisibility() {
-		for (Unit unit : getEnemyPlayer(getMe()).getUnits()) {
-			unit.setVisible(false);
-		}
-
-		for (Unit myUnit : getMe().getUnits()) {
-			if (!myUnit.isDead()) {
-				for (Unit enemyUnit : getEnemies(myUnit)) {
-					if (MapLogic.canSee(map, myUnit, enemyUnit)) {
-						enemyUnit.setVisible(true);
+		UnitStateStore store = getUnitStateStore();
+		TeamVision vision = getMyVision();
+		int me = players.indexOf(getMe());
+		vision.update(store, me);
+
+		for (int enemy = 0; enemy < store.size(); enemy++) {
+			if (store.getPlayer(enemy) == me) {
+				continue;
+			}
+			Unit enemyUnit = store.getUnit(enemy);
+			int tile = store.getTile(enemy);
+			if (tile == UnitStateStore.NO_TILE && store.isDead(enemy)) {
+				// dead units leave their tile but their body stays where it fell
+				tile = map.getIndexAtCoordinates(store.getX(enemy), store.getY(enemy));
+			}
+			boolean isVisible = tile != UnitStateStore.NO_TILE && vision.isVisible(tile);
+			if (isVisible && enemyUnit instanceof Soldier && store.getAction(enemy) == Action.HIDING.ordinal()) {
+				// hiding soldiers are more difficult to see
+				isVisible = false;
+				for (int mine = 0; mine < store.size(); mine++) {
+					if (store.getPlayer(mine) == me && !store.isDead(mine)
+							&& canSee(store.getUnit(mine), enemyUnit)) {
+						isVisible = true;
+						break;
 					}
 				}
 			}
+			enemyUnit.setVisible(isVisible);
+		}
+	}
+
+	/**
+	 * @return the fields of view of my units, created the first time
+	 */
+	public TeamVision getMyVision() {
+		if (myVision == null) {
+			myVision = new TeamVision(map);
 		}
+		return myVision;
 	}
 
 	/**
 	 * Updates units positions
 	 */
 	public void updateMoves() {
+		movesCounter++;
 		for (Player player : players) {
 			for (Unit unit : player.getUnits()) {
 				if (unit.getOrder() != null
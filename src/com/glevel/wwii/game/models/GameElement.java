@@ -1,5 +1,7 @@
 package com.glevel.wwii.game.models;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 
 import org.andengine.util.color.Color;
@@ -21,6 +23,8 @@ public abstract class GameElement implements Serializable {
 	private boolean isVisible = false;
 	private float spriteScale;
 	private float currentX = -1.0f, currentY, currentRotation;
+	// position before the last step of the game loop
+	private transient float previousX, previousY;
 
 	public static enum Rank {
 		neutral, enemy, ally
@@ -49,10 +53,21 @@ public abstract class GameElement implements Serializable {
 	}
 
 	public void setTilePosition(Battle battle, Tile tilePosition) {
-		if (this.tilePosition != null) {
-			this.tilePosition.setContent(null);
-		}
+		Tile previousTilePosition = this.tilePosition;
 		this.tilePosition = tilePosition;
+		updateTilesContent(battle, previousTilePosition);
+	}
+
+	/**
+	 * Leaves the previous tile and takes the new one.
+	 * 
+	 * @param battle
+	 * @param previousTilePosition
+	 */
+	protected void updateTilesContent(Battle battle, Tile previousTilePosition) {
+		if (previousTilePosition != null) {
+			previousTilePosition.setContent(null);
+		}
 		if (tilePosition != null) {
 			tilePosition.setContent(this);
 		}
@@ -79,12 +94,9 @@ public abstract class GameElement implements Serializable {
 
 	public void setRank(Rank rank) {
 		this.rank = rank;
-		if (rank == Rank.ally) {
-			setVisible(true);
-			sprite.setCanBeDragged(true);
-		} else {
-			setVisible(false);
-			sprite.setCanBeDragged(false);
+		setVisible(rank == Rank.ally);
+		if (sprite != null) {
+			sprite.setCanBeDragged(rank == Rank.ally);
 		}
 	}
 
@@ -94,7 +106,9 @@ public abstract class GameElement implements Serializable {
 
 	public void setVisible(boolean isVisible) {
 		this.isVisible = isVisible;
-		getSprite().setVisible(isVisible);
+		if (sprite != null) {
+			sprite.setVisible(isVisible);
+		}
 	}
 
 	public float getSpriteScale() {
@@ -105,6 +119,45 @@ public abstract class GameElement implements Serializable {
 		this.spriteScale = spriteScale;
 	}
 
+	/**
+	 * The model holds the position, the sprite only follows it.
+	 * 
+	 * @param x
+	 * @param y
+	 */
+	public void setPosition(float x, float y) {
+		setCurrentX(x);
+		setCurrentY(y);
+		if (sprite != null) {
+			sprite.setPosition(x, y);
+		}
+	}
+
+	public void setRotation(float rotation) {
+		setCurrentRotation(rotation);
+		if (sprite != null) {
+			sprite.setRotation(rotation);
+		}
+	}
+
+	public void savePreviousPosition() {
+		this.previousX = getCurrentX();
+		this.previousY = getCurrentY();
+	}
+
+	/**
+	 * Draws the element between its previous and current positions.
+	 * 
+	 * @param alpha
+	 *            0 for the previous position, 1 for the current one
+	 */
+	public void interpolateSprite(float alpha) {
+		if (sprite != null) {
+			sprite.setDrawingPosition(previousX + (getCurrentX() - previousX) * alpha, previousY
+					+ (getCurrentY() - previousY) * alpha);
+		}
+	}
+
 	public void setCurrentX(float currentX) {
 		this.currentX = currentX;
 	}
@@ -129,4 +182,12 @@ public abstract class GameElement implements Serializable {
 		return currentRotation;
 	}
 
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		// subclasses may keep the position elsewhere
+		currentX = getCurrentX();
+		currentY = getCurrentY();
+		currentRotation = getCurrentRotation();
+		out.defaultWriteObject();
+	}
+
 }
@@ -33,7 +33,9 @@ public class ObjectivePoint implements Serializable {
 
     public void setOwner(ArmiesData owner) {
         this.owner = owner;
-        sprite.updateColor(owner.getColor());
+        if (sprite != null) {
+            sprite.updateColor(owner.getColor());
+        }
     }
 
     public float getX() {
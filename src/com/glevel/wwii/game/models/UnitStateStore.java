@@ -0,0 +1,197 @@
+package com.glevel.wwii.game.models;
+
+import java.util.Arrays;
+
+import com.glevel.wwii.game.models.units.categories.Unit;
+import com.glevel.wwii.game.models.units.categories.Unit.InjuryState;
+
+/**
+ * State of the units of a battle, one array per field, indexed by the battle
+ * index of the units : sweeps over the units read contiguous arrays, and a copy
+ * of the arrays is a snapshot of the battle.
+ *
+ * Once added, a unit is a handle : its position, rotation, health, panic and
+ * action are read and written here. The unit copies them back in its own
+ * fields when it is saved.
+ */
+public class UnitStateStore {
+
+	public static final int NO_TILE = -1;
+
+	private static final byte DEAD = (byte) InjuryState.DEAD.ordinal();
+
+	private Unit[] units;
+	private int size = 0;
+
+	private float[] x;
+	private float[] y;
+	private float[] rotation;
+	private byte[] health;
+	private byte[] panic;
+	private byte[] action;
+	private byte[] player;
+	private int[] tile;
+
+	public UnitStateStore() {
+		this(32);
+	}
+
+	public UnitStateStore(int capacity) {
+		units = new Unit[capacity];
+		x = new float[capacity];
+		y = new float[capacity];
+		rotation = new float[capacity];
+		health = new byte[capacity];
+		panic = new byte[capacity];
+		action = new byte[capacity];
+		player = new byte[capacity];
+		tile = new int[capacity];
+	}
+
+	/**
+	 * Copies the state of the unit, which then reads and writes it here.
+	 *
+	 * @param unit
+	 * @param playerIndex
+	 *            index of the player owning the unit
+	 * @param tileIndex
+	 *            index of its tile or NO_TILE
+	 * @return the battle index of the unit
+	 */
+	public int add(Unit unit, int playerIndex, int tileIndex) {
+		if (size == units.length) {
+			grow();
+		}
+		int index = size++;
+		units[index] = unit;
+		x[index] = unit.getCurrentX();
+		y[index] = unit.getCurrentY();
+		rotation[index] = unit.getCurrentRotation();
+		health[index] = (byte) unit.getHealth().ordinal();
+		panic[index] = (byte) unit.getPanic();
+		action[index] = (byte) unit.getCurrentAction().ordinal();
+		player[index] = (byte) playerIndex;
+		tile[index] = tileIndex;
+		unit.attach(this, index);
+		return index;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public Unit getUnit(int index) {
+		return units[index];
+	}
+
+	public float getX(int index) {
+		return x[index];
+	}
+
+	public void setX(int index, float value) {
+		x[index] = value;
+	}
+
+	public float getY(int index) {
+		return y[index];
+	}
+
+	public void setY(int index, float value) {
+		y[index] = value;
+	}
+
+	public float getRotation(int index) {
+		return rotation[index];
+	}
+
+	public void setRotation(int index, float value) {
+		rotation[index] = value;
+	}
+
+	/**
+	 * @return the ordinal of the InjuryState
+	 */
+	public int getHealth(int index) {
+		return health[index];
+	}
+
+	public void setHealth(int index, int value) {
+		health[index] = (byte) value;
+	}
+
+	public boolean isDead(int index) {
+		return health[index] == DEAD;
+	}
+
+	public int getPanic(int index) {
+		return panic[index];
+	}
+
+	public void setPanic(int index, int value) {
+		panic[index] = (byte) value;
+	}
+
+	/**
+	 * @return the ordinal of the Action
+	 */
+	public int getAction(int index) {
+		return action[index];
+	}
+
+	public void setAction(int index, int value) {
+		action[index] = (byte) value;
+	}
+
+	public int getPlayer(int index) {
+		return player[index];
+	}
+
+	/**
+	 * @return the index of the tile of the unit or NO_TILE
+	 */
+	public int getTile(int index) {
+		return tile[index];
+	}
+
+	public void setTile(int index, int value) {
+		tile[index] = value;
+	}
+
+	/**
+	 * @return a copy of the state of every unit, the units are not attached
+	 *         to it
+	 */
+	public UnitStateStore snapshot() {
+		UnitStateStore snapshot = new UnitStateStore(Math.max(1, size));
+		System.arraycopy(units, 0, snapshot.units, 0, size);
+		snapshot.size = size;
+		copy(this, snapshot);
+		return snapshot;
+	}
+
+	private void grow() {
+		int capacity = 2 * units.length;
+		units = Arrays.copyOf(units, capacity);
+		x = Arrays.copyOf(x, capacity);
+		y = Arrays.copyOf(y, capacity);
+		rotation = Arrays.copyOf(rotation, capacity);
+		health = Arrays.copyOf(health, capacity);
+		panic = Arrays.copyOf(panic, capacity);
+		action = Arrays.copyOf(action, capacity);
+		player = Arrays.copyOf(player, capacity);
+		tile = Arrays.copyOf(tile, capacity);
+	}
+
+	private static void copy(UnitStateStore from, UnitStateStore to) {
+		int n = from.size;
+		System.arraycopy(from.x, 0, to.x, 0, n);
+		System.arraycopy(from.y, 0, to.y, 0, n);
+		System.arraycopy(from.rotation, 0, to.rotation, 0, n);
+		System.arraycopy(from.health, 0, to.health, 0, n);
+		System.arraycopy(from.panic, 0, to.panic, 0, n);
+		System.arraycopy(from.action, 0, to.action, 0, n);
+		System.arraycopy(from.player, 0, to.player, 0, n);
+		System.arraycopy(from.tile, 0, to.tile, 0, n);
+	}
+
+}
@@ -1,18 +1,129 @@
 package com.glevel.wwii.game.models.map;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
 import org.andengine.extension.tmx.TMXLayer;
 
-public class Map {
+import com.glevel.wwii.game.GameUtils;
+import com.glevel.wwii.game.interfaces.OnTileChanged;
+import com.glevel.wwii.game.logic.LineOfSightCache;
+import com.glevel.wwii.game.logic.pathfinding.ConnectedComponents;
+import com.glevel.wwii.game.logic.pathfinding.FlowField;
+import com.glevel.wwii.game.logic.pathfinding.GridAStar;
+import com.glevel.wwii.game.logic.pathfinding.HierarchicalPathfinder;
+import com.glevel.wwii.game.logic.pathfinding.LandmarkHeuristic;
+import com.glevel.wwii.game.logic.pathfinding.PathCache;
+import com.glevel.wwii.game.models.GameElement;
+import com.glevel.wwii.game.models.ObjectivePoint;
+import com.glevel.wwii.game.models.map.Tile.GroundType;
+import com.glevel.wwii.game.models.map.Tile.TerrainType;
+
+public class Map implements OnTileChanged {
+
+    // enough for footprints up to 2 tiles around the center
+    public static final int MAX_CLEARANCE = 3;
+
+    public static final int NO_OCCUPANT = -1;
+
+    private static final GroundType[] GROUND_TYPES = GroundType.values();
+    private static final TerrainType[] TERRAIN_TYPES = TerrainType.values();
+    private static final MoverClass[] MOVER_CLASSES = MoverClass.values();
 
     private Tile[][] tiles;
     private TMXLayer tmxLayer;
 
+    // flat copies of the tiles : ordinal of the ground, ordinal + 1 of the
+    // terrain (0 if none), id of the content
+    private byte[] grounds;
+    private byte[] terrains;
+    private long[] visionBlockingTiles;
+    private int[] occupantIds;
+    private List<GameElement> occupants = new ArrayList<GameElement>();
+    private HashMap<GameElement, Integer> occupantIdsByElement = new HashMap<GameElement, Integer>();
+    // number of tiles of each occupant, its id is released with its last tile
+    private List<Integer> occupantTileCounts = new ArrayList<Integer>();
+    private List<Integer> freeOccupantIds = new ArrayList<Integer>();
+    // one bit per tile : static passability for each mover class, occupancy
+    private long[][] passableTiles;
+    private long[] occupiedTiles;
+    // distance to the closest obstacle for each mover class, with or without
+    // the units
+    private byte[][] clearances;
+    private byte[][] staticClearances;
+    private HierarchicalPathfinder[] hierarchicalPathfinders;
+    // areas connected by the terrain, labelled again when the terrain changes
+    private ConnectedComponents[] connectedComponents;
+    private boolean isTerrainChanged = false;
+    private LandmarkHeuristic[] landmarkHeuristics;
+    private PathCache pathCache;
+    // buffers of the one-off searches of the game logic
+    private final GridAStar aStar = new GridAStar();
+    private LineOfSightCache lineOfSightCache;
+    private HashMap<ObjectivePoint, FlowField[]> flowFields = new HashMap<ObjectivePoint, FlowField[]>();
+
     public Tile[][] getTiles() {
         return tiles;
     }
 
     public void setTiles(Tile[][] tiles) {
         this.tiles = tiles;
+        for (Tile[] row : tiles) {
+            for (Tile tile : row) {
+                tile.setOnTileChanged(this);
+            }
+        }
+
+        // flat grids
+        int nbCells = getWidth() * getHeight();
+        grounds = new byte[nbCells];
+        terrains = new byte[nbCells];
+        visionBlockingTiles = new long[(nbCells + 63) >>> 6];
+        occupantIds = new int[nbCells];
+        Arrays.fill(occupantIds, NO_OCCUPANT);
+        occupants.clear();
+        occupantIdsByElement.clear();
+        occupantTileCounts.clear();
+        freeOccupantIds.clear();
+        for (int index = 0; index < nbCells; index++) {
+            updateTerrain(index);
+            updateOccupant(index);
+        }
+
+        // precompute passability
+        passableTiles = new long[MoverClass.values().length][(nbCells + 63) >>> 6];
+        occupiedTiles = new long[(nbCells + 63) >>> 6];
+        for (int index = 0; index < nbCells; index++) {
+            updatePassability(index);
+            setBit(occupiedTiles, index, getTile(index).getContent() != null);
+        }
+        clearances = new byte[MoverClass.values().length][nbCells];
+        staticClearances = new byte[MoverClass.values().length][nbCells];
+        for (int index = 0; index < nbCells; index++) {
+            for (MoverClass moverClass : MoverClass.values()) {
+                clearances[moverClass.ordinal()][index] = computeClearance(index, moverClass, true);
+                staticClearances[moverClass.ordinal()][index] = computeClearance(index, moverClass, false);
+            }
+        }
+
+        // precompute pathfinding data
+        hierarchicalPathfinders = new HierarchicalPathfinder[MoverClass.values().length];
+        for (MoverClass moverClass : MoverClass.values()) {
+            hierarchicalPathfinders[moverClass.ordinal()] = new HierarchicalPathfinder(new TileGrid(this, moverClass,
+                    null), HierarchicalPathfinder.DEFAULT_CLUSTER_SIZE, true);
+        }
+        connectedComponents = new ConnectedComponents[MoverClass.values().length];
+        for (MoverClass moverClass : MoverClass.values()) {
+            connectedComponents[moverClass.ordinal()] = new ConnectedComponents(
+                    new WeightedTileGrid(this, moverClass), true);
+        }
+        isTerrainChanged = false;
+        landmarkHeuristics = new LandmarkHeuristic[MoverClass.values().length];
+        pathCache = new PathCache(getWidth() * getHeight(), PathCache.DEFAULT_CAPACITY);
+        lineOfSightCache = new LineOfSightCache(this);
+        flowFields.clear();
     }
 
     public int getWidth() {
@@ -23,6 +134,118 @@ public class Map {
         return tiles.length;
     }
 
+    public Tile getTile(int index) {
+        return tiles[index / tiles[0].length][index % tiles[0].length];
+    }
+
+    public int getIndex(Tile tile) {
+        return tile.getY() * tiles[0].length + tile.getX();
+    }
+
+    /**
+     * @param index
+     * @param moverClass
+     * @return true if the terrain can be crossed by the mover class
+     */
+    public boolean isPassable(int index, MoverClass moverClass) {
+        return (passableTiles[moverClass.ordinal()][index >>> 6] & 1L << index) != 0;
+    }
+
+    public GroundType getGround(int index) {
+        return GROUND_TYPES[grounds[index]];
+    }
+
+    /**
+     * @param index
+     * @return the terrain of the tile or null
+     */
+    public TerrainType getTerrain(int index) {
+        int terrain = terrains[index];
+        return terrain == 0 ? null : TERRAIN_TYPES[terrain - 1];
+    }
+
+    /**
+     * @param index
+     * @return true if the terrain of the tile blocks the vision
+     */
+    public boolean isBlockingVision(int index) {
+        return (visionBlockingTiles[index >>> 6] & 1L << index) != 0;
+    }
+
+    /**
+     * @param index
+     * @return the id of the content of the tile or NO_OCCUPANT
+     */
+    public int getOccupantId(int index) {
+        return occupantIds[index];
+    }
+
+    public GameElement getOccupant(int occupantId) {
+        return occupants.get(occupantId);
+    }
+
+    /**
+     * @param x
+     * @param y
+     *            in pixels
+     * @return the index of the tile or -1 if the position is out of the map
+     */
+    public int getIndexAtCoordinates(float x, float y) {
+        if (x < 0 || y < 0) {
+            return -1;
+        }
+        int column = (int) x / GameUtils.PIXEL_BY_TILE;
+        int row = (int) y / GameUtils.PIXEL_BY_TILE;
+        if (column >= getWidth() || row >= getHeight()) {
+            return -1;
+        }
+        return row * getWidth() + column;
+    }
+
+    /**
+     * @param x
+     * @param y
+     *            in pixels
+     * @return the tile or null if the position is out of the map
+     */
+    public Tile getTileAtCoordinates(float x, float y) {
+        int index = getIndexAtCoordinates(x, y);
+        return index >= 0 ? getTile(index) : null;
+    }
+
+    public boolean isOccupied(int index) {
+        return (occupiedTiles[index >>> 6] & 1L << index) != 0;
+    }
+
+    /**
+     * @param index
+     * @param moverClass
+     * @return true if the tile is passable and free
+     */
+    public boolean isWalkable(int index, MoverClass moverClass) {
+        return (passableTiles[moverClass.ordinal()][index >>> 6] & ~occupiedTiles[index >>> 6] & 1L << index) != 0;
+    }
+
+    /**
+     * @param index
+     * @param moverClass
+     * @return the distance (Chebyshev, in tiles) to the closest tile which is
+     *         not walkable or out of the map, up to MAX_CLEARANCE. A footprint
+     *         fits around the tile if its radius is smaller than the clearance
+     */
+    public int getClearance(int index, MoverClass moverClass) {
+        return clearances[moverClass.ordinal()][index];
+    }
+
+    /**
+     * @param index
+     * @param moverClass
+     * @return same as getClearance() but units are ignored
+     */
+    public int getStaticClearance(int index, MoverClass moverClass) {
+        return staticClearances[moverClass.ordinal()][index];
+    }
+
     public TMXLayer getTmxLayer() {
         return tmxLayer;
     }
@@ -31,4 +254,294 @@ public class Map {
         this.tmxLayer = tmxLayer;
     }
 
+    public HierarchicalPathfinder getHierarchicalPathfinder(MoverClass moverClass) {
+        return hierarchicalPathfinders[moverClass.ordinal()];
+    }
+
+    public PathCache getPathCache() {
+        return pathCache;
+    }
+
+    /**
+     * @return the A* shared by the searches done during the update of the
+     *         battle, its buffers are kept from one search to the other
+     */
+    public GridAStar getGridAStar() {
+        return aStar;
+    }
+
+    public LineOfSightCache getLineOfSightCache() {
+        return lineOfSightCache;
+    }
+
+    /**
+     * The landmarks are computed the first time they are needed, and again
+     * after a terrain change.
+     * 
+     * @param moverClass
+     * @return the ALT heuristic of the mover class
+     */
+    public LandmarkHeuristic getLandmarkHeuristic(MoverClass moverClass) {
+        LandmarkHeuristic landmarkHeuristic = landmarkHeuristics[moverClass.ordinal()];
+        if (landmarkHeuristic == null) {
+            landmarkHeuristic = new LandmarkHeuristic(new WeightedTileGrid(this, moverClass));
+            landmarkHeuristics[moverClass.ordinal()] = landmarkHeuristic;
+        }
+        return landmarkHeuristic;
+    }
+
+    /**
+     * Units are ignored : a tile which is only blocked by units may be reached
+     * later.
+     * 
+     * @param from
+     * @param to
+     * @param moverClass
+     * @return false if the terrain makes it impossible to go from one tile to
+     *         the other
+     */
+    public boolean isReachable(int from, int to, MoverClass moverClass) {
+        ConnectedComponents components = getConnectedComponents(moverClass);
+        if (components.getLabel(from) < 0) {
+            // the mover does not fit where it stands, let the search decide
+            return true;
+        }
+        return components.isConnected(from, to);
+    }
+
+    /**
+     * @param from
+     * @param to
+     * @param moverClass
+     * @return the closest tile to the destination which can be reached
+     */
+    public Tile getClosestReachableTile(Tile from, Tile to, MoverClass moverClass) {
+        int source = getIndex(from), target = getIndex(to);
+        if (isReachable(source, target, moverClass)) {
+            return to;
+        }
+        ConnectedComponents components = getConnectedComponents(moverClass);
+        return getTile(components.findClosest(target, components.getLabel(source)));
+    }
+
+    private ConnectedComponents getConnectedComponents(MoverClass moverClass) {
+        if (isTerrainChanged) {
+            for (ConnectedComponents components : connectedComponents) {
+                components.build();
+            }
+            isTerrainChanged = false;
+        }
+        return connectedComponents[moverClass.ordinal()];
+    }
+
+    /**
+     * Flow fields are computed the first time they are needed and then kept up
+     * to date.
+     * 
+     * @param objective
+     * @param moverClass
+     * @return the flow field leading to the objective's tiles
+     */
+    public FlowField getFlowField(ObjectivePoint objective, MoverClass moverClass) {
+        FlowField[] objectiveFlowFields = flowFields.get(objective);
+        if (objectiveFlowFields == null) {
+            objectiveFlowFields = new FlowField[MoverClass.values().length];
+            flowFields.put(objective, objectiveFlowFields);
+        }
+
+        FlowField flowField = objectiveFlowFields[moverClass.ordinal()];
+        if (flowField == null) {
+            List<Integer> objectiveTiles = new ArrayList<Integer>();
+            for (Tile[] row : tiles) {
+                for (Tile tile : row) {
+                    if (tile.getObjective() == objective) {
+                        objectiveTiles.add(getIndex(tile));
+                    }
+                }
+            }
+            int[] targets = new int[objectiveTiles.size()];
+            for (int n = 0; n < targets.length; n++) {
+                targets[n] = objectiveTiles.get(n);
+            }
+
+            flowField = new FlowField(new WeightedTileGrid(this, moverClass), targets);
+            objectiveFlowFields[moverClass.ordinal()] = flowField;
+        }
+        return flowField;
+    }
+
+    @Override
+    public void onTileContentChanged(Tile tile, GameElement previousContent) {
+        updateOccupant(getIndex(tile));
+        lineOfSightCache.onTileContentChanged(tile, previousContent);
+        if ((previousContent == null) != (tile.getContent() == null)) {
+            // occupancy changed
+            int index = getIndex(tile);
+            setBit(occupiedTiles, index, tile.getContent() != null);
+            updateClearances(index, false);
+            onTilePassabilityChanged(index, false);
+        }
+    }
+
+    @Override
+    public void onTileTerrainChanged(Tile tile) {
+        int index = getIndex(tile);
+        updateTerrain(index);
+        updatePassability(index);
+        updateClearances(index, true);
+        isTerrainChanged = true;
+        lineOfSightCache.clear();
+        for (int n = 0; n < landmarkHeuristics.length; n++) {
+            // distances may be shorter now
+            landmarkHeuristics[n] = null;
+        }
+        onTilePassabilityChanged(index, true);
+    }
+
+    /**
+     * The walkability of the tiles whose footprint contains the changed tile
+     * may have changed.
+     */
+    private void onTilePassabilityChanged(int index, boolean isTerrainChanged) {
+        int x = index % getWidth();
+        int y = index / getWidth();
+        int maxRadius = 0;
+        for (MoverClass moverClass : MOVER_CLASSES) {
+            int radius = moverClass.getFootprintRadius();
+            maxRadius = Math.max(maxRadius, radius);
+            HierarchicalPathfinder hierarchicalPathfinder = hierarchicalPathfinders[moverClass.ordinal()];
+            // flow fields only use the footprint for the terrain
+            int flowFieldRadius = isTerrainChanged ? radius : 0;
+            for (int cellY = Math.max(0, y - radius); cellY <= Math.min(getHeight() - 1, y + radius); cellY++) {
+                for (int cellX = Math.max(0, x - radius); cellX <= Math.min(getWidth() - 1, x + radius); cellX++) {
+                    int cell = cellY * getWidth() + cellX;
+                    hierarchicalPathfinder.onCellChanged(cell);
+                    if (Math.abs(cellX - x) <= flowFieldRadius && Math.abs(cellY - y) <= flowFieldRadius
+                            && !flowFields.isEmpty()) {
+                        for (FlowField[] objectiveFlowFields : flowFields.values()) {
+                            FlowField flowField = objectiveFlowFields[moverClass.ordinal()];
+                            if (flowField != null) {
+                                flowField.onCellChanged(cell);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        for (int cellY = Math.max(0, y - maxRadius); cellY <= Math.min(getHeight() - 1, y + maxRadius); cellY++) {
+            for (int cellX = Math.max(0, x - maxRadius); cellX <= Math.min(getWidth() - 1, x + maxRadius); cellX++) {
+                pathCache.invalidate(cellY * getWidth() + cellX);
+            }
+        }
+    }
+
+    private void updateClearances(int index, boolean isTerrainChanged) {
+        int x = index % getWidth();
+        int y = index / getWidth();
+        int radius = MAX_CLEARANCE - 1;
+        for (int cellY = Math.max(0, y - radius); cellY <= Math.min(getHeight() - 1, y + radius); cellY++) {
+            for (int cellX = Math.max(0, x - radius); cellX <= Math.min(getWidth() - 1, x + radius); cellX++) {
+                int cell = cellY * getWidth() + cellX;
+                for (MoverClass moverClass : MOVER_CLASSES) {
+                    clearances[moverClass.ordinal()][cell] = computeClearance(cell, moverClass, true);
+                    if (isTerrainChanged) {
+                        staticClearances[moverClass.ordinal()][cell] = computeClearance(cell, moverClass, false);
+                    }
+                }
+            }
+        }
+    }
+
+    private byte computeClearance(int index, MoverClass moverClass, boolean isOccupancyIncluded) {
+        if (isOccupancyIncluded ? !isWalkable(index, moverClass) : !isPassable(index, moverClass)) {
+            return 0;
+        }
+
+        // look for an obstacle ring after ring
+        int x = index % getWidth();
+        int y = index / getWidth();
+        for (int k = 1; k < MAX_CLEARANCE; k++) {
+            for (int dy = -k; dy <= k; dy++) {
+                int step = dy == -k || dy == k ? 1 : 2 * k;
+                for (int dx = -k; dx <= k; dx += step) {
+                    int nx = x + dx;
+                    int ny = y + dy;
+                    if (nx < 0 || ny < 0 || nx >= getWidth() || ny >= getHeight()) {
+                        return (byte) k;
+                    }
+                    int cell = ny * getWidth() + nx;
+                    if (isOccupancyIncluded ? !isWalkable(cell, moverClass) : !isPassable(cell, moverClass)) {
+                        return (byte) k;
+                    }
+                }
+            }
+        }
+        return MAX_CLEARANCE;
+    }
+
+    private void updateTerrain(int index) {
+        Tile tile = getTile(index);
+        grounds[index] = (byte) tile.getGround().ordinal();
+        terrains[index] = (byte) (tile.getTerrain() != null ? tile.getTerrain().ordinal() + 1 : 0);
+        setBit(visionBlockingTiles, index, tile.getTerrain() != null && tile.getTerrain().isBlockingVision());
+    }
+
+    private void updateOccupant(int index) {
+        GameElement content = getTile(index).getContent();
+        int previousId = occupantIds[index];
+        if (previousId != NO_OCCUPANT) {
+            if (occupants.get(previousId) == content) {
+                return;
+            }
+            releaseOccupantTile(previousId);
+        }
+        if (content == null) {
+            occupantIds[index] = NO_OCCUPANT;
+            return;
+        }
+        Integer occupantId = occupantIdsByElement.get(content);
+        if (occupantId == null) {
+            if (freeOccupantIds.isEmpty()) {
+                occupantId = occupants.size();
+                occupants.add(content);
+                occupantTileCounts.add(0);
+            } else {
+                occupantId = freeOccupantIds.remove(freeOccupantIds.size() - 1);
+                occupants.set(occupantId, content);
+            }
+            occupantIdsByElement.put(content, occupantId);
+        }
+        occupantTileCounts.set(occupantId, occupantTileCounts.get(occupantId) + 1);
+        occupantIds[index] = occupantId;
+    }
+
+    /**
+     * Dead units and units which left the map do not keep their id.
+     */
+    private void releaseOccupantTile(int occupantId) {
+        int nbTiles = occupantTileCounts.get(occupantId) - 1;
+        occupantTileCounts.set(occupantId, nbTiles);
+        if (nbTiles == 0) {
+            occupantIdsByElement.remove(occupants.get(occupantId));
+            occupants.set(occupantId, null);
+            freeOccupantIds.add(occupantId);
+        }
+    }
+
+    private void updatePassability(int index) {
+        Tile tile = getTile(index);
+        for (MoverClass moverClass : MoverClass.values()) {
+            setBit(passableTiles[moverClass.ordinal()], index, moverClass.canCross(tile));
+        }
+    }
+
+    private static void setBit(long[] bits, int index, boolean value) {
+        if (value) {
+            bits[index >>> 6] |= 1L << index;
+        } else {
+            bits[index >>> 6] &= ~(1L << index);
+        }
+    }
+
 }
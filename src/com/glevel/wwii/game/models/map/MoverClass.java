@@ -0,0 +1,46 @@
+package com.glevel.wwii.game.models.map;
+
+import com.glevel.wwii.game.GameUtils;
+import com.glevel.wwii.game.models.map.Tile.TerrainType;
+
+/**
+ * Units sharing the same movement rules. Pathfinding data is precomputed once
+ * per mover class.
+ */
+public enum MoverClass {
+    INFANTRY(0.0f), VEHICLE(2.0f);
+
+    private final int footprintRadius;
+
+    /**
+     * @param radius
+     *            in meters
+     */
+    private MoverClass(float radius) {
+        this.footprintRadius = (int) Math.ceil(radius * GameUtils.PIXEL_BY_METER / GameUtils.PIXEL_BY_TILE);
+    }
+
+    /**
+     * @return the number of tiles occupied around the central tile
+     */
+    public int getFootprintRadius() {
+        return footprintRadius;
+    }
+
+    /**
+     * Static movement rule, occupancy is not checked.
+     * 
+     * @param tile
+     * @return true if this kind of unit can go through the tile
+     */
+    public boolean canCross(Tile tile) {
+        switch (this) {
+        case VEHICLE:
+            return tile.getTerrain() == null || tile.getTerrain() == TerrainType.field
+                    || tile.getTerrain() == TerrainType.bush || tile.getTerrain() == TerrainType.tree;
+        default:
+            return true;
+        }
+    }
+
+}
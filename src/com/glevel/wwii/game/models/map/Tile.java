@@ -5,6 +5,8 @@ import org.andengine.extension.tmx.TMXTile;
 import org.andengine.extension.tmx.TMXTileProperty;
 import org.andengine.extension.tmx.TMXTiledMap;
 
+import com.glevel.wwii.game.GameUtils;
+import com.glevel.wwii.game.interfaces.OnTileChanged;
 import com.glevel.wwii.game.logic.pathfinding.Node;
 import com.glevel.wwii.game.models.GameElement;
 import com.glevel.wwii.game.models.ObjectivePoint;
@@ -15,6 +17,7 @@ public class Tile extends TMXTile implements Node {
     private GroundType ground = GroundType.grass;
     private TerrainType terrain = null;
     private ObjectivePoint objective = null;
+    private OnTileChanged onTileChanged = null;
 
     public static enum GroundType {
         grass, concrete, water, mud
@@ -75,12 +78,30 @@ public class Tile extends TMXTile implements Node {
         }
     }
 
+    /**
+     * Constructor without any .tmx map, for the desktop tools
+     * 
+     * @param column
+     * @param row
+     * @param ground
+     * @param terrain
+     */
+    public Tile(int column, int row, GroundType ground, TerrainType terrain) {
+        super(0, column, row, GameUtils.PIXEL_BY_TILE, GameUtils.PIXEL_BY_TILE, null);
+        this.ground = ground;
+        this.terrain = terrain;
+    }
+
     public GameElement getContent() {
         return content;
     }
 
     public void setContent(GameElement content) {
+        GameElement previousContent = this.content;
         this.content = content;
+        if (onTileChanged != null && previousContent != content) {
+            onTileChanged.onTileContentChanged(this, previousContent);
+        }
     }
 
     public TerrainType getTerrain() {
@@ -89,6 +110,9 @@ public class Tile extends TMXTile implements Node {
 
     public void setTerrain(TerrainType terrain) {
         this.terrain = terrain;
+        if (onTileChanged != null) {
+            onTileChanged.onTileTerrainChanged(this);
+        }
     }
 
     public GroundType getGround() {
@@ -97,6 +121,9 @@ public class Tile extends TMXTile implements Node {
 
     public void setGround(GroundType ground) {
         this.ground = ground;
+        if (onTileChanged != null) {
+            onTileChanged.onTileTerrainChanged(this);
+        }
     }
 
     @Override
@@ -122,4 +149,8 @@ public class Tile extends TMXTile implements Node {
         this.objective = objective;
     }
 
+    public void setOnTileChanged(OnTileChanged onTileChanged) {
+        this.onTileChanged = onTileChanged;
+    }
+
 }
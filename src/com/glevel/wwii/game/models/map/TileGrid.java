@@ -0,0 +1,80 @@
+package com.glevel.wwii.game.models.map;
+
+import com.glevel.wwii.game.logic.pathfinding.SearchGrid;
+import com.glevel.wwii.game.models.GameElement;
+
+/**
+ * Map's tiles seen by the pathfinding engines for one mover class. A tile is
+ * walkable if the whole footprint of the mover fits around it. Tiles occupied
+ * by the mover itself are walkable.
+ */
+public class TileGrid implements SearchGrid {
+
+    private final Map map;
+    private final MoverClass moverClass;
+    private final GameElement mover;
+    private final int footprintRadius;
+
+    /**
+     * @param map
+     * @param moverClass
+     * @param mover
+     *            can be null to get the grid shared by all the units of the
+     *            mover class
+     */
+    public TileGrid(Map map, MoverClass moverClass, GameElement mover) {
+        this.map = map;
+        this.moverClass = moverClass;
+        this.mover = mover;
+        this.footprintRadius = moverClass.getFootprintRadius();
+    }
+
+    @Override
+    public int getWidth() {
+        return map.getWidth();
+    }
+
+    @Override
+    public int getHeight() {
+        return map.getHeight();
+    }
+
+    @Override
+    public boolean isWalkable(int index) {
+        if (footprintRadius == 0) {
+            if (map.isWalkable(index, moverClass)) {
+                return true;
+            }
+            // occupied by the mover itself
+            return mover != null && map.isPassable(index, moverClass) && map.getTile(index).getContent() == mover;
+        }
+
+        if (map.getClearance(index, moverClass) > footprintRadius) {
+            return true;
+        }
+
+        // the mover's own tiles count as obstacles in the clearance map : check
+        // the footprint tile by tile when it overlaps them
+        if (mover == null || mover.getTilePosition() == null
+                || map.getStaticClearance(index, moverClass) <= footprintRadius) {
+            return false;
+        }
+        int x = index % map.getWidth();
+        int y = index / map.getWidth();
+        Tile position = mover.getTilePosition();
+        if (Math.max(Math.abs(x - position.getX()), Math.abs(y - position.getY())) > 2 * footprintRadius) {
+            return false;
+        }
+        for (int dy = -footprintRadius; dy <= footprintRadius; dy++) {
+            for (int dx = -footprintRadius; dx <= footprintRadius; dx++) {
+                // inside the map and passable, see static clearance
+                int cell = index + dy * map.getWidth() + dx;
+                if (map.isOccupied(cell) && map.getTile(cell).getContent() != mover) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+}
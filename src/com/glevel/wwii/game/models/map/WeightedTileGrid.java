@@ -0,0 +1,42 @@
+package com.glevel.wwii.game.models.map;
+
+import com.glevel.wwii.game.logic.pathfinding.WeightedGrid;
+
+/**
+ * Map's tiles seen by the flow fields for one mover class. The footprint of
+ * the mover must fit in the terrain. Occupied tiles are not blocking but more
+ * expensive, so that movers go around each other.
+ */
+public class WeightedTileGrid implements WeightedGrid {
+
+    public static final float OCCUPIED_TILE_COST = 4.0f;
+
+    private final Map map;
+    private final MoverClass moverClass;
+
+    public WeightedTileGrid(Map map, MoverClass moverClass) {
+        this.map = map;
+        this.moverClass = moverClass;
+    }
+
+    @Override
+    public int getWidth() {
+        return map.getWidth();
+    }
+
+    @Override
+    public int getHeight() {
+        return map.getHeight();
+    }
+
+    @Override
+    public boolean isWalkable(int index) {
+        return map.getStaticClearance(index, moverClass) > moverClass.getFootprintRadius();
+    }
+
+    @Override
+    public float getExtraCost(int index) {
+        return map.isOccupied(index) ? OCCUPIED_TILE_COST : 0;
+    }
+
+}
@@ -22,7 +22,7 @@ public class FireOrder extends Order {
     }
 
     public float getXDestination() {
-        return target != null ? target.getSprite().getX() : xDestination;
+        return target != null ? target.getCurrentX() : xDestination;
     }
 
     public void setXDestination(float xDestination) {
@@ -30,7 +30,7 @@ public class FireOrder extends Order {
     }
 
     public float getYDestination() {
-        return target != null ? target.getSprite().getY() : yDestination;
+        return target != null ? target.getCurrentY() : yDestination;
     }
 
     public void setYDestination(float yDestination) {
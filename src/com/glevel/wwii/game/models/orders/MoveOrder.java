@@ -1,5 +1,6 @@
 package com.glevel.wwii.game.models.orders;
 
+import com.glevel.wwii.game.models.ObjectivePoint;
 
 public class MoveOrder extends Order {
 
@@ -9,12 +10,23 @@ public class MoveOrder extends Order {
     private static final long serialVersionUID = -2227867419405002169L;
     private float xDestination;
     private float yDestination;
+    private transient ObjectivePoint objective = null;
 
     public MoveOrder(float xDestination, float yDestination) {
         this.xDestination = xDestination;
         this.yDestination = yDestination;
     }
 
+    /**
+     * Units follow the objective's flow field.
+     * 
+     * @param objective
+     */
+    public MoveOrder(ObjectivePoint objective) {
+        this(objective.getX(), objective.getY());
+        this.objective = objective;
+    }
+
     public float getXDestination() {
         return xDestination;
     }
@@ -31,4 +43,8 @@ public class MoveOrder extends Order {
         this.yDestination = yDestination;
     }
 
+    public ObjectivePoint getObjective() {
+        return objective;
+    }
+
 }
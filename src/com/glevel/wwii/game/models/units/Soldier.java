@@ -143,7 +143,9 @@ public class Soldier extends Unit {
 
 	@Override
 	public void died(Battle battle) {
-		((SoldierSprite) sprite).died();
+		if (sprite != null) {
+			((SoldierSprite) sprite).died();
+		}
 		super.died(battle);
 	}
 
@@ -1,18 +1,29 @@
 package com.glevel.wwii.game.models.units.categories;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.util.List;
 
 import com.glevel.wwii.R;
 import com.glevel.wwii.game.GameUtils;
 import com.glevel.wwii.game.data.ArmiesData;
+import com.glevel.wwii.game.graphics.TankSprite;
+import com.glevel.wwii.game.interfaces.OnPathFound;
+import com.glevel.wwii.game.logic.EventScheduler;
 import com.glevel.wwii.game.logic.MapLogic;
+import com.glevel.wwii.game.logic.pathfinding.DStarLite;
+import com.glevel.wwii.game.logic.pathfinding.FlowField;
 import com.glevel.wwii.game.logic.pathfinding.MovingElement;
 import com.glevel.wwii.game.logic.pathfinding.Node;
+import com.glevel.wwii.game.logic.pathfinding.PathSmoother;
 import com.glevel.wwii.game.models.Battle;
 import com.glevel.wwii.game.models.GameElement;
 import com.glevel.wwii.game.models.ObjectivePoint;
+import com.glevel.wwii.game.models.UnitStateStore;
 import com.glevel.wwii.game.models.map.Map;
+import com.glevel.wwii.game.models.map.MoverClass;
 import com.glevel.wwii.game.models.map.Tile;
+import com.glevel.wwii.game.models.map.TileGrid;
 import com.glevel.wwii.game.models.orders.DefendOrder;
 import com.glevel.wwii.game.models.orders.FireOrder;
 import com.glevel.wwii.game.models.orders.HideOrder;
@@ -26,7 +37,7 @@ import com.glevel.wwii.game.models.weapons.Turret;
 import com.glevel.wwii.game.models.weapons.categories.IndirectWeapon;
 import com.glevel.wwii.game.models.weapons.categories.Weapon;
 
-public abstract class Unit extends GameElement implements MovingElement {
+public abstract class Unit extends GameElement implements MovingElement, OnPathFound {
 
 	/**
      * 
@@ -35,6 +46,9 @@ public abstract class Unit extends GameElement implements MovingElement {
 
 	private static final float CLOSE_COMBAT_MAX_DISTANCE = 6.0f;// in meters
 	private static final float START_AMBUSH_DISTANCE = 15.0f;// in meters
+	private static final int PANIC_DECAY_PERIOD = 3;// in ticks
+	// step of a path delivered late, looked for at the next move
+	private static final int STEP_AHEAD = -1;
 
 	protected final ArmiesData army;
 	private final int image;
@@ -48,8 +62,21 @@ public abstract class Unit extends GameElement implements MovingElement {
 	private int frags;
 	private boolean isAvailable;
 	private Order order;
-	protected Action currentAction;
+	private Action currentAction;
 	private int panic;
+	private transient Tile pathDestination = null;
+	private transient int[] path = null;
+	private transient int pathStep = 0;
+	// center of the next tile, given by getNextStep
+	private transient float[] nextStepPosition = null;
+	// tiles of a timed path are entered one by tick of movesByPathTick moves
+	private transient int pathStartMove = 0;
+	private transient int movesByPathTick = 0;
+	private transient DStarLite replanner = null;
+	private transient int battleIndex = -1;
+	private transient UnitStateStore stateStore = null;
+	private transient EventScheduler.Event panicDecay = null;
+	private float turretRotation = 0.0f;
 
 	protected static enum RotationStatus {
 		NONE, ROTATING, REVERSE
@@ -89,6 +116,9 @@ public abstract class Unit extends GameElement implements MovingElement {
 		WAITING, MOVING, RUNNING, FIRING, HIDING, RELOADING, AIMING, DEFENDING, FIGHTING
 	}
 
+	private static final InjuryState[] INJURY_STATES = InjuryState.values();
+	private static final Action[] ACTIONS = Action.values();
+
 	public Unit(ArmiesData army, int name, int image, Experience experience, List<Weapon> weapons, int moveSpeed,
 			String spriteName, float spriteScale) {
 		super(name, spriteName, spriteScale);
@@ -98,7 +128,7 @@ public abstract class Unit extends GameElement implements MovingElement {
 		this.weapons = weapons;
 		this.moveSpeed = moveSpeed;
 		this.health = InjuryState.NONE;
-		this.currentAction = Action.WAITING;
+		setCurrentAction(Action.WAITING);
 		this.setPanic(0);
 		this.frags = 0;
 		this.spriteName = spriteName;
@@ -113,11 +143,15 @@ public abstract class Unit extends GameElement implements MovingElement {
 	public abstract int getPrice();
 
 	public InjuryState getHealth() {
-		return health;
+		return stateStore != null ? INJURY_STATES[stateStore.getHealth(battleIndex)] : health;
 	}
 
 	public void setHealth(InjuryState health) {
-		this.health = health;
+		if (stateStore != null) {
+			stateStore.setHealth(battleIndex, health.ordinal());
+		} else {
+			this.health = health;
+		}
 	}
 
 	public List<Weapon> getWeapons() {
@@ -146,14 +180,21 @@ public abstract class Unit extends GameElement implements MovingElement {
 			return;
 		}
 		this.order = order;
+		this.path = null;
+		this.pathDestination = null;
+		this.movesByPathTick = 0;
 	}
 
 	public Action getCurrentAction() {
-		return currentAction;
+		return stateStore != null ? ACTIONS[stateStore.getAction(battleIndex)] : currentAction;
 	}
 
 	public void setCurrentAction(Action currentAction) {
-		this.currentAction = currentAction;
+		if (stateStore != null) {
+			stateStore.setAction(battleIndex, currentAction.ordinal());
+		} else {
+			this.currentAction = currentAction;
+		}
 	}
 
 	public boolean isAvailable() {
@@ -204,36 +245,179 @@ public abstract class Unit extends GameElement implements MovingElement {
 		return unit;
 	}
 
-	public void updateMovementPath(Map map) {
+	/**
+	 * Asks for a path to the destination of the move order. The unit goes
+	 * straight to its destination until the path is found.
+	 * 
+	 * @param battle
+	 */
+	public void updateMovementPath(Battle battle) {
+		MoveOrder moveOrder = (MoveOrder) order;
+		if (moveOrder.getObjective() != null || path != null || getTilePosition() == null) {
+			// the flow field is used for objectives
+			return;
+		}
+
+		Tile destination = MapLogic.getTileAtCoordinates(battle.getMap(), moveOrder.getXDestination(),
+				moveOrder.getYDestination());
+		if (destination != null) {
+			pathDestination = destination;
+			battle.getPathRequestService().requestPath(this, destination, this);
+		}
+	}
+
+	/**
+	 * Called when the next step is blocked : the path to the destination is
+	 * repaired around the obstacles.
+	 * 
+	 * @param battle
+	 */
+	protected void replanPath(Battle battle) {
+		MoveOrder moveOrder = (MoveOrder) order;
+		Map map = battle.getMap();
+		Tile destination = MapLogic.getTileAtCoordinates(map, moveOrder.getXDestination(),
+				moveOrder.getYDestination());
+		if (destination == null || getTilePosition() == null) {
+			return;
+		}
+
+		int start = map.getIndex(getTilePosition());
+		int goal = map.getIndex(destination);
+		boolean isReachable;
+		if (!map.isReachable(start, goal, getMoverClass())) {
+			isReachable = false;
+		} else if (replanner == null || replanner.getGoal() != goal) {
+			replanner = new DStarLite(new TileGrid(map, getMoverClass(), this), true);
+			isReachable = replanner.plan(start, goal);
+		} else {
+			// only the tiles which changed since the last plan are updated
+			isReachable = replanner.replan(start);
+		}
+
+		if (!isReachable) {
+			onDestinationUnreachable(battle);
+			return;
+		}
+		path = PathSmoother.smooth(new TileGrid(map, getMoverClass(), this), replanner.getPath());
+		pathStep = 0;
+		movesByPathTick = 0;
+		pathDestination = destination;
+	}
+
+	/**
+	 * Called when the destination of the move order cannot be reached anymore.
+	 * 
+	 * @param battle
+	 */
+	public void onDestinationUnreachable(Battle battle) {
+		battle.getPathRequestService().cancel(this);
+		setOrder(new DefendOrder());
+	}
+
+	/**
+	 * Gives a timed path computed for the current move order, like the paths
+	 * planned for a group of units : the unit does not enter the tile of a
+	 * tick before this tick has begun, and waits in its tile meanwhile.
+	 * 
+	 * @param destination
+	 * @param path
+	 *            tile of the unit at each tick
+	 * @param startMove
+	 *            moves counter of the battle at tick 0
+	 * @param movesByTick
+	 *            duration of a tick in moves
+	 */
+	public void setPath(Tile destination, int[] path, int startMove, int movesByTick) {
+		this.pathDestination = destination;
+		this.path = path;
+		this.pathStep = 0;
+		this.pathStartMove = startMove;
+		this.movesByPathTick = movesByTick;
+	}
+
+	@Override
+	public void onPathFound(Tile destination, int[] path) {
+		if (destination == pathDestination && path != null) {
+			this.path = path;
+			this.pathStep = STEP_AHEAD;
+			this.movesByPathTick = 0;
+		}
+	}
+
+	/**
+	 * @return the distance covered in one move on the current tile, in pixels
+	 */
+	protected float getMoveDistance() {
+		return moveSpeed * 10 * 0.03f * getUnitSpeed();
+	}
+
+	/**
+	 * @return the number of moves needed to cross a tile diagonally at the
+	 *         current speed, Integer.MAX_VALUE if the unit cannot move
+	 */
+	public int getMovesByTile() {
+		float moveDistance = getMoveDistance();
+		if (moveDistance <= 0) {
+			return Integer.MAX_VALUE;
+		}
+		return (int) Math.ceil(GameUtils.PIXEL_BY_TILE * Math.sqrt(2) / moveDistance);
 	}
 
 	public void move(Battle battle) {
-		this.currentAction = Action.MOVING;
+		setCurrentAction(Action.MOVING);
 		MoveOrder moveOrder = (MoveOrder) order;
+		float x = moveOrder.getXDestination();
+		float y = moveOrder.getYDestination();
+
+		// follow the flow field or the path if any
+		float[] nextStep = getNextStep(battle, moveOrder);
+		if (nextStep != null) {
+			x = nextStep[0];
+			y = nextStep[1];
+		}
 
-		updateUnitRotation(moveOrder.getXDestination(), moveOrder.getYDestination());
-		float dx = moveOrder.getXDestination() - sprite.getX();
-		float dy = moveOrder.getYDestination() - sprite.getY();
+		if (x == getCurrentX() && y == getCurrentY()) {
+			// waiting in its tile or already arrived
+			if (nextStep == null) {
+				setOrder(null);
+			}
+			return;
+		}
+
+		updateUnitRotation(x, y);
+		float dx = x - getCurrentX();
+		float dy = y - getCurrentY();
 		double angle = Math.atan(dy / dx);
-		float dd = moveSpeed * 10 * 0.03f * getUnitSpeed();
+		float dd = getMoveDistance();
 
 		boolean hasArrived = false;
-		float distanceLeft = MapLogic.getDistanceBetween(moveOrder.getXDestination(), moveOrder.getYDestination(),
-				sprite.getX(), sprite.getY());
-		if (distanceLeft < dd) {
-			hasArrived = true;
+		float distanceLeft = MapLogic.getDistanceBetween(x, y, getCurrentX(), getCurrentY());
+		boolean isStepReached = distanceLeft <= dd;
+		if (isStepReached) {
+			hasArrived = nextStep == null;
 			dd = distanceLeft;
 		}
 
-		float[] newPosition = MapLogic.getCoordinatesAfterTranslation(sprite.getX(), sprite.getY(), dd, angle, dx > 0);
+		// dx == 0 : atan already gives the way up or down
+		float[] newPosition = MapLogic.getCoordinatesAfterTranslation(getCurrentX(), getCurrentY(), dd, angle, dx >= 0);
+		if (isStepReached) {
+			// exactly on the step, without rounding errors
+			newPosition[0] = x;
+			newPosition[1] = y;
+		}
 
 		Tile nextTile = MapLogic.getTileAtCoordinates(battle.getMap(), newPosition[0], newPosition[1]);
 
-		if (nextTile == null || !canMoveIn(nextTile)) {
+		if (nextTile == null) {
+			return;
+		}
+
+		if (!canMoveIn(nextTile)) {
+			replanPath(battle);
 			return;
 		}
 
-		sprite.setPosition(newPosition[0], newPosition[1]);
+		setPosition(newPosition[0], newPosition[1]);
 
 		if (getTilePosition() != null
 				&& (nextTile.getTileX() != getTilePosition().getTileX() || nextTile.getTileY() != getTilePosition()
@@ -246,14 +430,116 @@ public abstract class Unit extends GameElement implements MovingElement {
 		}
 	}
 
+	/**
+	 * @param battle
+	 * @param moveOrder
+	 * @return the center of the next tile given by the objective's flow field
+	 *         or by the path, in an array reused by the next call, or null if
+	 *         the unit goes straight to its destination
+	 */
+	protected float[] getNextStep(Battle battle, MoveOrder moveOrder) {
+		if (getTilePosition() == null) {
+			return null;
+		}
+		Map map = battle.getMap();
+		int currentCell = map.getIndex(getTilePosition());
+
+		int nextCell = -1;
+		if (path != null) {
+			if (pathStep == STEP_AHEAD) {
+				pathStep = getStepAhead(map, currentCell);
+			}
+			// a timed path cannot go further than the tile of the next tick
+			int lastStep = path.length - 1;
+			if (movesByPathTick > 0) {
+				lastStep = Math.min(lastStep, (battle.getMovesCounter() - pathStartMove) / movesByPathTick + 1);
+			}
+			// skip the tiles already reached, the waits included : the
+			// segments were checked from center to center, so a tile is only
+			// reached at its center
+			boolean isAtCenter = getCurrentX() == getCenter(getTilePosition().getX())
+					&& getCurrentY() == getCenter(getTilePosition().getY());
+			for (int n = pathStep; n <= lastStep; n++) {
+				if (path[n] == currentCell) {
+					pathStep = isAtCenter ? n + 1 : n;
+				}
+			}
+			if (pathStep > lastStep && lastStep < path.length - 1) {
+				// too early for the next tile
+				nextCell = currentCell;
+			} else if (pathStep < path.length - 1) {
+				nextCell = path[pathStep];
+			} else if (path[path.length - 1] != map.getIndex(pathDestination)) {
+				// end of a partial path : a new one is needed
+				path = null;
+			}
+		} else if (moveOrder.getObjective() != null) {
+			FlowField flowField = map.getFlowField(moveOrder.getObjective(), getMoverClass());
+			nextCell = flowField.getNextCell(currentCell);
+		}
+
+		if (nextCell < 0) {
+			// destination reached or cannot be reached
+			return null;
+		}
+
+		if (nextStepPosition == null) {
+			nextStepPosition = new float[2];
+		}
+		Tile nextTile = map.getTile(nextCell);
+		nextStepPosition[0] = getCenter(nextTile.getX());
+		nextStepPosition[1] = getCenter(nextTile.getY());
+		return nextStepPosition;
+	}
+
+	private static float getCenter(int tileCoordinate) {
+		return (tileCoordinate + 0.5f) * GameUtils.PIXEL_BY_TILE;
+	}
+
+	/**
+	 * The path was asked a few updates ago and the unit may have left its
+	 * source since then : it goes on from the tile of the path it stands on,
+	 * else from the closest segment of the path.
+	 * 
+	 * @param map
+	 * @param currentCell
+	 * @return the step of the waypoint the unit heads for
+	 */
+	private int getStepAhead(Map map, int currentCell) {
+		for (int n = path.length - 1; n >= 0; n--) {
+			if (path[n] == currentCell) {
+				return n;
+			}
+		}
+
+		// in tiles, from the center of the tile (0, 0)
+		float x = getCurrentX() / GameUtils.PIXEL_BY_TILE - 0.5f;
+		float y = getCurrentY() / GameUtils.PIXEL_BY_TILE - 0.5f;
+		int width = map.getWidth();
+		int step = 0;
+		float minDistance = Float.MAX_VALUE;
+		for (int n = 1; n < path.length; n++) {
+			float ax = path[n - 1] % width, ay = path[n - 1] / width;
+			float abx = path[n] % width - ax, aby = path[n] / width - ay;
+			float length = abx * abx + aby * aby;
+			float t = length > 0 ? Math.max(0, Math.min(1, ((x - ax) * abx + (y - ay) * aby) / length)) : 0;
+			float distance = MapLogic.getDistanceBetween(x, y, ax + t * abx, ay + t * aby);
+			if (distance < minDistance) {
+				minDistance = distance;
+				step = n;
+			}
+		}
+		return step;
+	}
+
 	protected RotationStatus updateUnitRotation(float xDestination, float yDestination) {
-		float dx = xDestination - sprite.getX();
-		float dy = yDestination - sprite.getY();
+		float dx = xDestination - getCurrentX();
+		float dy = yDestination - getCurrentY();
 		double angle = Math.atan(dy / dx);
-		if (dx > 0) {
-			sprite.setRotation((float) (angle * 180 / Math.PI + 90));
+		if (dx >= 0) {
+			setRotation((float) (angle * 180 / Math.PI + 90));
 		} else {
-			sprite.setRotation((float) (angle * 180 / Math.PI + 270));
+			setRotation((float) (angle * 180 / Math.PI + 270));
 		}
 		return RotationStatus.NONE;
 	}
@@ -267,7 +553,7 @@ public abstract class Unit extends GameElement implements MovingElement {
 			if (getWeapons().get(0) instanceof Turret) {
 				// turrets take time to rotate
 				Turret turret = (Turret) getWeapons().get(0);
-				boolean isRotatingOver = turret.rotateTurret(sprite, fireOrder.getXDestination(),
+				boolean isRotatingOver = turret.rotateTurret(this, fireOrder.getXDestination(),
 						fireOrder.getYDestination());
 				if (!isRotatingOver) {
 					return;
@@ -279,7 +565,7 @@ public abstract class Unit extends GameElement implements MovingElement {
 		}
 
 		if (target.isDead() || !(getWeapons().get(0) instanceof IndirectWeapon)
-				&& !MapLogic.canSee(battle.getMap(), this, target)) {
+				&& !battle.canSee(this, target)) {
 			// if target is dead or is not visible anymore, stop to shoot
 			setOrder(new DefendOrder());
 			return;
@@ -299,45 +585,36 @@ public abstract class Unit extends GameElement implements MovingElement {
 		if (weapon instanceof Turret) {
 			// turrets take time to rotate
 			Turret turret = (Turret) weapon;
-			boolean isRotatingOver = turret.rotateTurret(sprite, target.getSprite().getX(), target.getSprite().getY());
+			boolean isRotatingOver = turret.rotateTurret(this, target.getCurrentX(), target.getCurrentY());
 			if (!isRotatingOver) {
 				return;
 			}
 		} else if (canMove()) {
-			RotationStatus rotationStatus = updateUnitRotation(target.getSprite().getX(), target.getSprite().getY());
+			RotationStatus rotationStatus = updateUnitRotation(target.getCurrentX(), target.getCurrentY());
 			if (rotationStatus == RotationStatus.ROTATING) {
 				return;
 			}
 		}
 
 		if (weapon.getReloadCounter() > 0) {
-			if (weapon.getAimCounter() == 0) {
-				weapon.setAimCounter(-10);
-				// aiming
-				this.currentAction = Action.AIMING;
-			} else if (weapon.getAimCounter() < 0) {
-				weapon.setAimCounter(weapon.getAimCounter() + 1);
-				if (weapon.getAimCounter() == 0) {
-					weapon.setAimCounter(weapon.getCadence());
-				}
+			if (weapon.getAimCounter() <= 0) {
 				// aiming
-				this.currentAction = Action.AIMING;
-			} else if (battle.getGameCounter() % (11 - weapon.getShootSpeed()) == 0) {
+				weapon.aim(battle);
+				setCurrentAction(Action.AIMING);
+			} else if (weapon.isReadyToShoot(battle)) {
 				// firing !!!
-				currentAction = Action.FIRING;
+				setCurrentAction(Action.FIRING);
 
 				if (weapon.getAimCounter() == weapon.getCadence()) {
-					battle.getOnNewSoundToPlay().playSound(weapon.getSound(), sprite.getX(), sprite.getY());
+					battle.getOnNewSoundToPlay().playSound(weapon.getSound(), getCurrentX(), getCurrentY());
 				}
 
-				if (!(weapon instanceof Knife)) {
+				if (!(weapon instanceof Knife) && sprite != null) {
 					// add muzzle flash sprite
 					sprite.startFireAnimation(weapon);
 				}
 
-				weapon.setAmmoAmount(weapon.getAmmoAmount() - 1);
-				weapon.setReloadCounter(weapon.getReloadCounter() - 1);
-				weapon.setAimCounter(weapon.getAimCounter() - 1);
+				weapon.fireShot(battle);
 
 				// if not a lot of ammo, more aiming !
 				if (weapon.getAmmoAmount() == weapon.getMagazineSize() * 2) {
@@ -357,24 +634,14 @@ public abstract class Unit extends GameElement implements MovingElement {
 					}
 				}
 			}
-		} else if (weapon.getReloadCounter() == 0) {
-			// need to reload
-			this.currentAction = Action.RELOADING;
-			weapon.setReloadCounter(-weapon.getReloadSpeed());
 		} else {
 			// reloading
-			this.currentAction = Action.RELOADING;
-			if (battle.getGameCounter() % 12 == 0) {
-				weapon.setReloadCounter(weapon.getReloadCounter() + 1);
-				if (weapon.getReloadCounter() == 0) {
-					// reloading is over
-					weapon.setReloadCounter(weapon.getMagazineSize());
-				}
-			}
+			setCurrentAction(Action.RELOADING);
+			weapon.reload(battle);
 		}
 
 		if (weapon instanceof Knife) {
-			currentAction = Action.FIGHTING;
+			setCurrentAction(Action.FIGHTING);
 		}
 	}
 
@@ -385,7 +652,7 @@ public abstract class Unit extends GameElement implements MovingElement {
 			return new Knife();
 		}
 
-		boolean canSeeTarget = MapLogic.canSee(battle.getMap(), this, target);
+		boolean canSeeTarget = battle.canSee(this, target);
 		Weapon bestWeapon = null;
 		for (Weapon weapon : weapons) {
 			if (weapon.canUseWeapon(this, target, canSeeTarget)) {
@@ -399,41 +666,141 @@ public abstract class Unit extends GameElement implements MovingElement {
 	}
 
 	public void applyDamage(int damage) {
-		health = InjuryState.values()[Math.min(InjuryState.DEAD.ordinal(), health.ordinal() + damage)];
+		setHealth(INJURY_STATES[Math.min(InjuryState.DEAD.ordinal(), getHealth().ordinal() + damage)]);
 	}
 
 	public void defendPosition(Battle battle) {
-		this.currentAction = Action.DEFENDING;
+		setCurrentAction(Action.DEFENDING);
+		schedulePanicDecay(battle);
+	}
+
+	public void hide(Battle battle) {
+		setCurrentAction(Action.HIDING);
+		schedulePanicDecay(battle);
+	}
 
-		if (battle.getGameCounter() % 3 == 0) {
-			if (this.panic > 0) {
-				this.panic--;
+	/**
+	 * Panic decreases every PANIC_DECAY_PERIOD ticks while the unit defends or
+	 * hides, the event stops when the panic is over.
+	 * 
+	 * @param battle
+	 */
+	private void schedulePanicDecay(Battle battle) {
+		final EventScheduler scheduler = battle.getScheduler();
+		if (getPanic() == 0 || panicDecay != null && panicDecay.isScheduledIn(scheduler)) {
+			return;
+		}
+		panicDecay = new EventScheduler.Event() {
+			@Override
+			public void run() {
+				if (isDead()) {
+					return;
+				}
+				Action action = getCurrentAction();
+				if (getPanic() > 0 && (action == Action.DEFENDING || action == Action.HIDING)) {
+					setPanic(getPanic() - 1);
+				}
+				if (getPanic() > 0) {
+					scheduler.schedule(this, PANIC_DECAY_PERIOD);
+				}
 			}
+		};
+		scheduler.schedule(panicDecay, PANIC_DECAY_PERIOD);
+	}
+
+	public int getPanic() {
+		return stateStore != null ? stateStore.getPanic(battleIndex) : panic;
+	}
+
+	/**
+	 * @return rotation of the turret relative to the hull
+	 */
+	public float getTurretRotation() {
+		return turretRotation;
+	}
+
+	public void setTurretRotation(float turretRotation) {
+		this.turretRotation = turretRotation;
+		if (sprite instanceof TankSprite) {
+			((TankSprite) sprite).setTurretSpriteRotation(turretRotation);
 		}
 	}
 
-	public void hide(Battle battle) {
-		this.currentAction = Action.HIDING;
+	/**
+	 * @return the index of the unit in the state store of its battle, -1 if
+	 *         none
+	 */
+	public int getBattleIndex() {
+		return battleIndex;
+	}
 
-		if (battle.getGameCounter() % 3 == 0) {
-			if (this.panic > 0) {
-				this.panic--;
-			}
+	/**
+	 * Called by the store : the unit reads and writes its state there from
+	 * now on.
+	 * 
+	 * @param stateStore
+	 * @param battleIndex
+	 */
+	public void attach(UnitStateStore stateStore, int battleIndex) {
+		this.stateStore = stateStore;
+		this.battleIndex = battleIndex;
+	}
+
+	@Override
+	public float getCurrentX() {
+		return stateStore != null ? stateStore.getX(battleIndex) : super.getCurrentX();
+	}
+
+	@Override
+	public void setCurrentX(float currentX) {
+		if (stateStore != null) {
+			stateStore.setX(battleIndex, currentX);
+		} else {
+			super.setCurrentX(currentX);
 		}
 	}
 
-	public int getPanic() {
-		return panic;
+	@Override
+	public float getCurrentY() {
+		return stateStore != null ? stateStore.getY(battleIndex) : super.getCurrentY();
+	}
+
+	@Override
+	public void setCurrentY(float currentY) {
+		if (stateStore != null) {
+			stateStore.setY(battleIndex, currentY);
+		} else {
+			super.setCurrentY(currentY);
+		}
+	}
+
+	@Override
+	public float getCurrentRotation() {
+		return stateStore != null ? stateStore.getRotation(battleIndex) : super.getCurrentRotation();
+	}
+
+	@Override
+	public void setCurrentRotation(float currentRotation) {
+		if (stateStore != null) {
+			stateStore.setRotation(battleIndex, currentRotation);
+		} else {
+			super.setCurrentRotation(currentRotation);
+		}
 	}
 
 	public void setPanic(int panic) {
-		this.panic = panic;
+		if (stateStore != null) {
+			stateStore.setPanic(battleIndex, panic);
+		} else {
+			this.panic = panic;
+		}
 	}
 
 	public void resolveOrder(Battle battle) {
+		int panic = getPanic();
 		if (panic > 0) {
 			// test if the unit can react
-			if (Math.random() * 10 + getExperience().ordinal() < panic) {
+			if (battle.getRandom().nextDouble() * 10 + getExperience().ordinal() < panic) {
 				// the unit is under fire
 				// if (Math.random() < 0.1) {
 				// battle.getOnNewSoundToPlay().playSound("need_support",
@@ -448,20 +815,20 @@ public abstract class Unit extends GameElement implements MovingElement {
 			if (this instanceof Vehicle) {
 				// vehicles can move and fire at the same time
 				for (Unit u : battle.getEnemies(this)) {
-					if (!u.isDead() && MapLogic.canSee(battle.getMap(), this, u)) {
+					if (!u.isDead() && battle.canSee(this, u)) {
 						boolean done = ((Vehicle) this).fireWhileMoving(battle, u);
 						if (done) {
 							return;
 						}
 					}
 				}
-				((Turret) getWeapons().get(0)).rotateTurretTo(sprite, sprite.getRotation());
+				((Turret) getWeapons().get(0)).rotateTurretTo(this, getCurrentRotation());
 			}
-			updateMovementPath(battle.getMap());
+			updateMovementPath(battle);
 		} else if (order instanceof DefendOrder) {
 			// search for enemies
 			for (Unit u : battle.getEnemies(this)) {
-				if (!u.isDead() && MapLogic.canSee(battle.getMap(), this, u) && getBestWeapon(battle, u) != null) {
+				if (!u.isDead() && battle.canSee(this, u) && getBestWeapon(battle, u) != null) {
 					setOrder(new FireOrder(u));
 					return;
 				}
@@ -473,7 +840,7 @@ public abstract class Unit extends GameElement implements MovingElement {
 		} else if (order instanceof HideOrder) {
 			// ambush !
 			for (Unit u : battle.getEnemies(this)) {
-				if (!u.isDead() && MapLogic.canSee(battle.getMap(), this, u) && getBestWeapon(battle, u) != null
+				if (!u.isDead() && battle.canSee(this, u) && getBestWeapon(battle, u) != null
 						&& MapLogic.getDistanceBetween(this, u) < START_AMBUSH_DISTANCE * GameUtils.PIXEL_BY_METER) {
 					setOrder(new FireOrder(u));
 					return;
@@ -488,18 +855,19 @@ public abstract class Unit extends GameElement implements MovingElement {
 	}
 
 	public boolean isDead() {
-		return health == InjuryState.DEAD;
+		return stateStore != null ? stateStore.isDead(battleIndex) : health == InjuryState.DEAD;
 	}
 
 	public void getShots(Battle battle, Unit shooter) {
 		// increase panic
-		if (panic < 10) {
-			panic++;
+		if (getPanic() < 10) {
+			setPanic(getPanic() + 1);
 		}
 
 		// fight back
-		if (order == null || order instanceof DefendOrder || order instanceof MoveOrder && Math.random() < 0.3) {
-			if (MapLogic.canSee(battle.getMap(), this, shooter) && getBestWeapon(battle, shooter) != null) {
+		if (order == null || order instanceof DefendOrder || order instanceof MoveOrder
+				&& battle.getRandom().nextDouble() < 0.3) {
+			if (battle.canSee(this, shooter) && getBestWeapon(battle, shooter) != null) {
 				setOrder(new FireOrder(shooter));
 				// battle.getOnNewSoundToPlay().playSound("incoming",
 				// sprite.getX(), sprite.getY());
@@ -525,26 +893,31 @@ public abstract class Unit extends GameElement implements MovingElement {
 	public void died(Battle battle) {
 		if (this instanceof Soldier || this instanceof Cannon) {
 			setTilePosition(battle, null);
-			sprite.setZIndex(10);
+			if (sprite != null) {
+				sprite.setZIndex(10);
+			}
 		}
 
-		if (!sprite.isVisible()) {
-			sprite.setVisible(true);
+		if (sprite != null) {
+			if (!sprite.isVisible()) {
+				sprite.setVisible(true);
+			}
+			sprite.setCanBeDragged(false);
 		}
-		sprite.setCanBeDragged(false);
 		setOrder(null);
 
 		// draw sprite
+		int zIndex = sprite != null ? sprite.getZIndex() + 1 : 0;
 		if (this instanceof Tank || this instanceof Cannon) {
 			// smoke
-			battle.getOnNewSprite().drawAnimatedSprite(getSprite().getX(), getSprite().getY() - 70, "smoke.png", 120,
-					2.0f, -1, false, sprite.getZIndex() + 1);
-			battle.getOnNewSoundToPlay().playSound("explosion", sprite.getX(), sprite.getY());
+			battle.getOnNewSprite().drawAnimatedSprite(getCurrentX(), getCurrentY() - 70, "smoke.png", 120,
+					2.0f, -1, false, zIndex);
+			battle.getOnNewSoundToPlay().playSound("explosion", getCurrentX(), getCurrentY());
 		} else if (this instanceof Soldier) {
 			// blood
-			battle.getOnNewSprite().drawAnimatedSprite(getSprite().getX(), getSprite().getY(), "blood.png", 120, 0.6f,
-					0, false, sprite.getZIndex() + 1);
-			battle.getOnNewSoundToPlay().playSound("death", sprite.getX(), sprite.getY());
+			battle.getOnNewSprite().drawAnimatedSprite(getCurrentX(), getCurrentY(), "blood.png", 120, 0.6f,
+					0, false, zIndex);
+			battle.getOnNewSoundToPlay().playSound("death", getCurrentX(), getCurrentY());
 		}
 
 	}
@@ -552,6 +925,10 @@ public abstract class Unit extends GameElement implements MovingElement {
 	@Override
 	public void setTilePosition(Battle battle, Tile tilePosition) {
 		super.setTilePosition(battle, tilePosition);
+		if (stateStore != null) {
+			stateStore.setTile(battleIndex, tilePosition != null ? battle.getMap().getIndex(tilePosition)
+					: UnitStateStore.NO_TILE);
+		}
 
 		// conquer objectives if any
 		if (tilePosition != null && tilePosition.getObjective() != null) {
@@ -567,6 +944,10 @@ public abstract class Unit extends GameElement implements MovingElement {
 		return moveSpeed > 0;
 	}
 
+	public MoverClass getMoverClass() {
+		return MoverClass.INFANTRY;
+	}
+
 	@Override
 	public boolean canMoveIn(Node node) {
 		return ((Tile) node).getContent() == null || ((Tile) node).getContent() == this;
@@ -582,4 +963,12 @@ public abstract class Unit extends GameElement implements MovingElement {
 		return canMoveIn(tile);
 	}
 
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		// the state is in the store during a battle
+		health = getHealth();
+		panic = getPanic();
+		currentAction = getCurrentAction();
+		out.defaultWriteObject();
+	}
+
 }
@@ -1,6 +1,5 @@
 package com.glevel.wwii.game.models.units.categories;
 
-import java.util.ArrayList;
 import java.util.List;
 
 import com.glevel.wwii.game.GameUtils;
@@ -10,9 +9,8 @@ import com.glevel.wwii.game.logic.MapLogic;
 import com.glevel.wwii.game.logic.pathfinding.Node;
 import com.glevel.wwii.game.models.Battle;
 import com.glevel.wwii.game.models.Battle.Phase;
-import com.glevel.wwii.game.models.map.Map;
+import com.glevel.wwii.game.models.map.MoverClass;
 import com.glevel.wwii.game.models.map.Tile;
-import com.glevel.wwii.game.models.map.Tile.TerrainType;
 import com.glevel.wwii.game.models.orders.DefendOrder;
 import com.glevel.wwii.game.models.orders.FireOrder;
 import com.glevel.wwii.game.models.orders.MoveOrder;
@@ -39,14 +37,10 @@ public abstract class Vehicle extends Unit {
 																				// meters
 	private static final float REVERSE_SPEED = 0.5f;
 	private static final float ROTATION_SPEED = 0.6f;
-	private transient List<Tile> realTilesPosition = new ArrayList<Tile>();
-	private static final float VEHICLE_RADIUS_SIZE = 2.0f;// in meters
 
 	// fire
 	private static final float MG_MAX_FIRE_ANGLE = 25.0f;
 
-	// private float nextX = -1.0f, nextY = -1.0f;
-
 	protected static enum VehicleType {
 		LIGHT, TANK
 	}
@@ -152,57 +146,40 @@ public abstract class Vehicle extends Unit {
 		return super.canMove();
 	}
 
+	@Override
+	public MoverClass getMoverClass() {
+		return MoverClass.VEHICLE;
+	}
+
 	@Override
 	public boolean canMoveIn(Node node) {
 		Tile tile = (Tile) node;
-		if (tile.getTerrain() != null && tile.getTerrain() != TerrainType.field && tile.getTerrain() != TerrainType.bush
-				&& tile.getTerrain() != TerrainType.tree) {
+		if (!MoverClass.VEHICLE.canCross(tile)) {
 			return false;
 		}
 
 		return super.canMoveIn(tile);
 	}
 
-	@Override
-	public void updateMovementPath(Map map) {
-		// if (nextX < 0) {
-		// MoveOrder moveOrder = (MoveOrder) getOrder();
-		//
-		// Tile destinationTile = MapLogic.getTileAtCoordinates(map,
-		// moveOrder.getXDestination(), moveOrder.getYDestination());
-		// Tile originTile = MapLogic.getTileAtCoordinates(map, sprite.getX(),
-		// sprite.getY());
-		// List<Tile> path = new AStar<Tile>().search(map.getTiles(),
-		// originTile, destinationTile, true, this, 30);
-		//
-		// if (path != null
-		// && path.size() > 1
-		// && path.size() - 5 > Math.abs(destinationTile.getTileColumn()
-		// - originTile.getTileColumn())
-		// + Math.abs(destinationTile.getTileRow()
-		// - originTile.getTileRow())) {
-		// nextX = path.get(path.size() / 2 - 1).getX()
-		// * GameUtils.PIXEL_BY_TILE;
-		// nextY = path.get(path.size() / 2 - 1).getY()
-		// * GameUtils.PIXEL_BY_TILE;
-		// }
-		// }
-	}
-
 	@Override
 	public void setOrder(Order order) {
-		// nextX = -1.0f;
-		// nextY = -1.0f;
-		if (!isDead() && sprite != null) {
-			if (order instanceof MoveOrder) {
-				((TankSprite) sprite).updateMovingAnimation(true);
-			} else {
-				((TankSprite) sprite).updateMovingAnimation(false);
-			}
+		if (!isDead()) {
+			updateMovingAnimation(order instanceof MoveOrder);
 		}
 		super.setOrder(order);
 	}
 
+	private void updateMovingAnimation(boolean isMoving) {
+		if (sprite != null) {
+			((TankSprite) sprite).updateMovingAnimation(isMoving);
+		}
+	}
+
+	@Override
+	protected float getMoveDistance() {
+		return moveSpeed * 10 * 0.04f * getUnitSpeed();
+	}
+
 	@Override
 	public void move(Battle battle) {
 		if (!canMove()) {
@@ -210,36 +187,57 @@ public abstract class Vehicle extends Unit {
 			return;
 		}
 
-		currentAction = Action.MOVING;
+		setCurrentAction(Action.MOVING);
 
 		MoveOrder moveOrder = (MoveOrder) getOrder();
 		float x = moveOrder.getXDestination();
 		float y = moveOrder.getYDestination();
-		// float x = nextX < 0 ? moveOrder.getXDestination() : nextX;
-		// float y = nextX < 0 ? moveOrder.getYDestination() : nextY;
+
+		// follow the flow field or the path if any
+		float[] nextStep = getNextStep(battle, moveOrder);
+		if (nextStep != null) {
+			x = nextStep[0];
+			y = nextStep[1];
+		}
+
+		if (x == getCurrentX() && y == getCurrentY()) {
+			// waiting in its tile or already arrived
+			updateMovingAnimation(false);
+			if (nextStep == null) {
+				setOrder(null);
+			}
+			return;
+		}
 
 		// cannot rotate and move at the same time
 		RotationStatus rotationStatus = updateUnitRotation(x, y);
 		if (rotationStatus == RotationStatus.ROTATING) {
-			((TankSprite) getSprite()).updateMovingAnimation(false);
+			updateMovingAnimation(false);
 			return;
 		}
 
-		((TankSprite) getSprite()).updateMovingAnimation(true);
+		updateMovingAnimation(true);
 
-		float dx = x - sprite.getX();
-		float dy = y - sprite.getY();
+		float dx = x - getCurrentX();
+		float dy = y - getCurrentY();
 		double angle = Math.atan(dy / dx);
-		float dd = moveSpeed * 10 * 0.04f * getUnitSpeed() * (rotationStatus == RotationStatus.REVERSE ? REVERSE_SPEED : 1.0f);
+		float dd = getMoveDistance() * (rotationStatus == RotationStatus.REVERSE ? REVERSE_SPEED : 1.0f);
 
 		boolean hasArrived = false;
-		float distanceLeft = MapLogic.getDistanceBetween(x, y, sprite.getX(), sprite.getY());
-		if (distanceLeft < dd) {
-			hasArrived = true;
+		float distanceLeft = MapLogic.getDistanceBetween(x, y, getCurrentX(), getCurrentY());
+		boolean isStepReached = distanceLeft <= dd;
+		if (isStepReached) {
+			hasArrived = nextStep == null;
 			dd = distanceLeft;
 		}
 
-		float[] newPosition = MapLogic.getCoordinatesAfterTranslation(sprite.getX(), sprite.getY(), dd, angle, dx > 0);
+		// dx == 0 : atan already gives the way up or down
+		float[] newPosition = MapLogic.getCoordinatesAfterTranslation(getCurrentX(), getCurrentY(), dd, angle, dx >= 0);
+		if (isStepReached) {
+			// exactly on the step, without rounding errors
+			newPosition[0] = x;
+			newPosition[1] = y;
+		}
 
 		Tile nextTile = MapLogic.getTileAtCoordinates(battle.getMap(), newPosition[0], newPosition[1]);
 		if (nextTile == null) {
@@ -252,18 +250,18 @@ public abstract class Vehicle extends Unit {
 				Soldier soldier = (Soldier) nextTile.getContent();
 				instantlyKilledSomeone(battle, soldier);
 			} else {
+				replanPath(battle);
 				return;
 			}
 		}
 
-		sprite.setPosition(newPosition[0], newPosition[1]);
+		setPosition(newPosition[0], newPosition[1]);
 
 		if (nextTile.getTileX() != getTilePosition().getTileX() || nextTile.getTileY() != getTilePosition().getTileY()) {
 			setTilePosition(battle, nextTile);
 		}
 
 		if (hasArrived) {
-			updateMovementPath(battle.getMap());
 			setOrder(new DefendOrder());
 		}
 	}
@@ -272,24 +270,24 @@ public abstract class Vehicle extends Unit {
 	protected RotationStatus updateUnitRotation(float xDestination, float yDestination) {
 		RotationStatus rotationStatus = RotationStatus.NONE;
 
-		float dx = xDestination - sprite.getX();
-		float dy = yDestination - sprite.getY();
+		float dx = xDestination - getCurrentX();
+		float dy = yDestination - getCurrentY();
 		double finalAngle = Math.atan(dy / dx) * 180 / Math.PI;
-		if (dx > 0) {
+		if (dx >= 0) {
 			finalAngle += 90;
 		} else {
 			finalAngle -= 90;
 		}
-		double dTau = finalAngle - sprite.getRotation();
+		double dTau = finalAngle - getCurrentRotation();
 
 		// reverse if not far !
-		if (Math.abs(dTau) > 135.0f && MapLogic.getDistanceBetween(xDestination, yDestination, sprite.getX(), sprite.getY()) < REVERSE_THRESHOLD) {
+		if (Math.abs(dTau) > 135.0f && MapLogic.getDistanceBetween(xDestination, yDestination, getCurrentX(), getCurrentY()) < REVERSE_THRESHOLD) {
 			if (dx > 0) {
 				finalAngle -= 180;
 			} else {
 				finalAngle += 180;
 			}
-			dTau = finalAngle - sprite.getRotation();
+			dTau = finalAngle - getCurrentRotation();
 			rotationStatus = RotationStatus.REVERSE;
 		}
 
@@ -305,14 +303,14 @@ public abstract class Vehicle extends Unit {
 		} else if (dTau < 0) {
 			rotationStep = Math.max(dTau, -ROTATION_SPEED);
 		}
-		sprite.setRotation((float) (sprite.getRotation() + rotationStep));
+		setRotation((float) (getCurrentRotation() + rotationStep));
 
-		if (sprite.getRotation() > 360) {
-			sprite.setRotation(sprite.getRotation() - 360);
+		if (getCurrentRotation() > 360) {
+			setRotation(getCurrentRotation() - 360);
 		}
 
-		if (sprite.getRotation() < -360) {
-			sprite.setRotation(sprite.getRotation() + 360);
+		if (getCurrentRotation() < -360) {
+			setRotation(getCurrentRotation() + 360);
 		}
 
 		return Math.abs(rotationStep) < ROTATION_SPEED ? rotationStatus : RotationStatus.ROTATING;
@@ -328,7 +326,7 @@ public abstract class Vehicle extends Unit {
 			if (getWeapons().get(0) instanceof Turret) {
 				// turrets take time to rotate
 				Turret turret = (Turret) getWeapons().get(0);
-				boolean isRotatingOver = turret.rotateTurret(sprite, fireOrder.getXDestination(), fireOrder.getYDestination());
+				boolean isRotatingOver = turret.rotateTurret(this, fireOrder.getXDestination(), fireOrder.getYDestination());
 				if (!isRotatingOver) {
 					return;
 				}
@@ -338,7 +336,7 @@ public abstract class Vehicle extends Unit {
 			return;
 		}
 
-		if (target.isDead() || !MapLogic.canSee(battle.getMap(), this, target)) {
+		if (target.isDead() || !battle.canSee(this, target)) {
 			// if target is dead or is not visible anymore, stop to shoot
 			setOrder(new DefendOrder());
 			return;
@@ -347,7 +345,7 @@ public abstract class Vehicle extends Unit {
 		// get most suitable weapon
 		boolean canShoot = false;
 		for (Weapon weapon : getWeapons()) {
-			if (weapon.canUseWeapon(this, target, MapLogic.canSee(battle.getMap(), this, target))) {
+			if (weapon.canUseWeapon(this, target, battle.canSee(this, target))) {
 				fireWithWeapon(battle, weapon, target);
 				canShoot = true;
 			}
@@ -361,7 +359,7 @@ public abstract class Vehicle extends Unit {
 
 	public boolean fireWhileMoving(Battle battle, Unit target) {
 
-		if (target.isDead() || !MapLogic.canSee(battle.getMap(), this, target)) {
+		if (target.isDead() || !battle.canSee(this, target)) {
 			// if target is dead or is not visible anymore, stop to shoot
 			return false;
 		}
@@ -372,38 +370,31 @@ public abstract class Vehicle extends Unit {
 			if (weapon instanceof Turret && target instanceof Vehicle) {
 				// cannons cannot shoot while moving but can rotate
 				Turret turret = (Turret) weapon;
-				turret.rotateTurret(sprite, target.getSprite().getX(), target.getSprite().getY());
+				turret.rotateTurret(this, target.getCurrentX(), target.getCurrentY());
 				return true;
-			} else if (Math.abs(MapLogic.getAngle(sprite, target.getSprite().getX(), target.getSprite().getY())) >= MG_MAX_FIRE_ANGLE) {
+			} else if (Math.abs(MapLogic.getAngle(this, target.getCurrentX(), target.getCurrentY())) >= MG_MAX_FIRE_ANGLE) {
 				return false;
 			}
 
 			if (weapon.getReloadCounter() > 0) {
-				if (weapon.getAimCounter() == 0) {
-					weapon.setAimCounter(-10);
+				if (weapon.getAimCounter() <= 0) {
 					// aiming
-					this.currentAction = Action.AIMING;
-				} else if (weapon.getAimCounter() < 0) {
-					weapon.setAimCounter(weapon.getAimCounter() + 1);
-					if (weapon.getAimCounter() == 0) {
-						weapon.setAimCounter(weapon.getCadence());
-					}
-					// aiming
-					this.currentAction = Action.AIMING;
-				} else if (battle.getGameCounter() % (11 - weapon.getShootSpeed()) == 0) {
+					weapon.aim(battle);
+					setCurrentAction(Action.AIMING);
+				} else if (weapon.isReadyToShoot(battle)) {
 					// firing !!!
-					currentAction = Action.FIRING;
+					setCurrentAction(Action.FIRING);
 
 					if (weapon.getAimCounter() == weapon.getCadence()) {
-						battle.getOnNewSoundToPlay().playSound(weapon.getSound(), sprite.getX(), sprite.getY());
+						battle.getOnNewSoundToPlay().playSound(weapon.getSound(), getCurrentX(), getCurrentY());
 					}
 
 					// add muzzle flash sprite
-					sprite.startFireAnimation(weapon);
+					if (sprite != null) {
+						sprite.startFireAnimation(weapon);
+					}
 
-					weapon.setAmmoAmount(weapon.getAmmoAmount() - 1);
-					weapon.setReloadCounter(weapon.getReloadCounter() - 1);
-					weapon.setAimCounter(weapon.getAimCounter() - 1);
+					weapon.fireShot(battle);
 
 					// if not a lot of ammo, more aiming !
 					if (weapon.getAmmoAmount() == weapon.getMagazineSize() * 2) {
@@ -423,56 +414,71 @@ public abstract class Vehicle extends Unit {
 						}
 					}
 				}
-			} else if (weapon.getReloadCounter() == 0) {
-				// need to reload
-				weapon.setReloadCounter(-weapon.getReloadSpeed());
 			} else {
 				// reloading
-				if (battle.getGameCounter() % 12 == 0) {
-					weapon.setReloadCounter(weapon.getReloadCounter() + 1);
-					if (weapon.getReloadCounter() == 0) {
-						// reloading is over
-						weapon.setReloadCounter(weapon.getMagazineSize());
-					}
-				}
+				weapon.reload(battle);
 			}
 			return true;
 		}
 		return false;
 	}
 
+	/**
+	 * The vehicle stands on the square of its footprint : only the tiles which
+	 * leave or join the footprint are changed.
+	 */
 	@Override
-	public void setTilePosition(Battle battle, Tile tilePosition) {
-		super.setTilePosition(battle, tilePosition);
-		updateTilesPosition(battle);
-	}
-
-	private void updateTilesPosition(Battle battle) {
-		if (realTilesPosition != null) {
-			for (Tile t : realTilesPosition) {
-				t.setContent(null);
+	protected void updateTilesContent(Battle battle, Tile previousTilePosition) {
+		Tile[][] tiles = battle.getMap().getTiles();
+		int radius = MoverClass.VEHICLE.getFootprintRadius();
+		Tile tilePosition = getTilePosition();
+
+		if (previousTilePosition != null) {
+			int minX = Math.max(0, previousTilePosition.getX() - radius);
+			int maxX = Math.min(tiles[0].length - 1, previousTilePosition.getX() + radius);
+			int minY = Math.max(0, previousTilePosition.getY() - radius);
+			int maxY = Math.min(tiles.length - 1, previousTilePosition.getY() + radius);
+			for (int y = minY; y <= maxY; y++) {
+				for (int x = minX; x <= maxX; x++) {
+					if (!isInFootprint(tilePosition, x, y, radius) && tiles[y][x].getContent() == this) {
+						tiles[y][x].setContent(null);
+					}
+				}
 			}
 		}
 
-		realTilesPosition = new ArrayList<Tile>();
-		List<Tile> adjacentTiles = MapLogic.getAdjacentTiles(battle.getMap(), getTilePosition(),
-				(int) Math.ceil(VEHICLE_RADIUS_SIZE * GameUtils.PIXEL_BY_METER / GameUtils.PIXEL_BY_TILE), true);
-		for (Tile t : adjacentTiles) {
-			// run over soldiers
-			if (battle.getPhase() == Phase.combat && t.getContent() instanceof Soldier) {
-				Soldier soldier = (Soldier) t.getContent();
-				instantlyKilledSomeone(battle, soldier);
-			}
+		if (tilePosition != null) {
+			int minX = Math.max(0, tilePosition.getX() - radius);
+			int maxX = Math.min(tiles[0].length - 1, tilePosition.getX() + radius);
+			int minY = Math.max(0, tilePosition.getY() - radius);
+			int maxY = Math.min(tiles.length - 1, tilePosition.getY() + radius);
+			for (int y = minY; y <= maxY; y++) {
+				for (int x = minX; x <= maxX; x++) {
+					Tile t = tiles[y][x];
+					if (t.getContent() == this) {
+						continue;
+					}
+
+					// run over soldiers
+					if (battle.getPhase() == Phase.combat && t.getContent() instanceof Soldier) {
+						Soldier soldier = (Soldier) t.getContent();
+						instantlyKilledSomeone(battle, soldier);
+					}
 
-			t.setContent(this);
-			realTilesPosition.add(t);
+					t.setContent(this);
+				}
+			}
 		}
 	}
 
+	private static boolean isInFootprint(Tile center, int x, int y, int radius) {
+		return center != null && Math.abs(x - center.getX()) <= radius && Math.abs(y - center.getY()) <= radius;
+	}
+
 	@Override
 	public boolean canBeDeployedThere(Battle battle, Tile tile) {
 		List<Tile> adjacentTiles = MapLogic.getAdjacentTiles(battle.getMap(), tile,
-				(int) Math.ceil(VEHICLE_RADIUS_SIZE * GameUtils.PIXEL_BY_METER / GameUtils.PIXEL_BY_TILE), true);
+				MoverClass.VEHICLE.getFootprintRadius(), true);
 		for (Tile t : adjacentTiles) {
 			if (t.getContent() != null && t.getContent() != this) {
 				return false;
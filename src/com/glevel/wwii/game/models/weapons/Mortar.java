@@ -1,5 +1,6 @@
 package com.glevel.wwii.game.models.weapons;
 
+import com.glevel.wwii.game.models.Battle;
 import com.glevel.wwii.game.models.map.Tile.TerrainType;
 import com.glevel.wwii.game.models.units.categories.Unit;
 import com.glevel.wwii.game.models.weapons.categories.IndirectWeapon;
@@ -18,13 +19,13 @@ public class Mortar extends IndirectWeapon {
     }
 
     @Override
-    protected void resolveDamageDiceRoll(int tohit, Unit shooter, Unit target) {
+    protected void resolveDamageDiceRoll(Battle battle, int tohit, Unit shooter, Unit target) {
         // mortars are useless on targets in houses
         if (range > 200 && target.getTilePosition().getTerrain() == TerrainType.house) {
             return;
         }
 
-        super.resolveDamageDiceRoll(tohit, shooter, target);
+        super.resolveDamageDiceRoll(battle, tohit, shooter, target);
     }
 
 }
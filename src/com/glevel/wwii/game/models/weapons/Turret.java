@@ -1,7 +1,7 @@
 package com.glevel.wwii.game.models.weapons;
 
-import com.glevel.wwii.game.graphics.TankSprite;
-import com.glevel.wwii.game.graphics.UnitSprite;
+import com.glevel.wwii.game.models.units.Tank;
+import com.glevel.wwii.game.models.units.categories.Unit;
 import com.glevel.wwii.game.models.weapons.categories.DeflectionWeapon;
 
 public class Turret extends DeflectionWeapon {
@@ -27,24 +27,31 @@ public class Turret extends DeflectionWeapon {
         this.turretRotationSpeed = turretRotationSpeed;
     }
 
-    public boolean rotateTurret(UnitSprite sprite, float xDestination, float yDestination) {
+    public boolean rotateTurret(Unit unit, float xDestination, float yDestination) {
         // calculate final rotation and rotation step direction
-        float dx = xDestination - sprite.getX();
-        float dy = yDestination - sprite.getY();
+        float dx = xDestination - unit.getCurrentX();
+        float dy = yDestination - unit.getCurrentY();
         double finalAngle = Math.atan(dy / dx) * 180 / Math.PI;
         if (dx > 0) {
             finalAngle += 90;
         } else {
             finalAngle -= 90;
         }
-        return rotateTurretTo(sprite, (float) finalAngle);
+        return rotateTurretTo(unit, (float) finalAngle);
     }
 
-    public boolean rotateTurretTo(UnitSprite sprite, float finalAngle) {
-        double dTau = finalAngle - sprite.getRotation();
+    /**
+     * Tanks rotate their turret, the other units rotate as a whole.
+     * 
+     * @param unit
+     * @param finalAngle
+     * @return true if the turret is in position
+     */
+    public boolean rotateTurretTo(Unit unit, float finalAngle) {
+        double dTau = finalAngle - unit.getCurrentRotation();
 
-        if (sprite instanceof TankSprite) {
-            dTau -= ((TankSprite) sprite).getTurretSpriteRotation();
+        if (unit instanceof Tank) {
+            dTau -= unit.getTurretRotation();
         }
 
         if (dTau > 180) {
@@ -60,11 +67,10 @@ public class Turret extends DeflectionWeapon {
             rotationStep = Math.max(dTau, -turretRotationSpeed);
         }
 
-        if (sprite instanceof TankSprite) {
-            ((TankSprite) sprite)
-                    .setTurretSpriteRotation((float) (((TankSprite) sprite).getTurretSpriteRotation() + rotationStep));
+        if (unit instanceof Tank) {
+            unit.setTurretRotation((float) (unit.getTurretRotation() + rotationStep));
         } else {
-            sprite.setRotation((float) (sprite.getRotation() + rotationStep));
+            unit.setRotation((float) (unit.getCurrentRotation() + rotationStep));
         }
 
         return Math.abs(rotationStep) < turretRotationSpeed;
@@ -39,12 +39,12 @@ public abstract class DeflectionWeapon extends Weapon {
         float distance = MapLogic.getDistanceBetween(shooter, target);
 
         // deflection depends on distance and experience of the shooter
-        int deflection = (int) (Math.random() * (getMaxDeflection(shooter, distance)) * GameUtils.PIXEL_BY_METER);
-        double angle = Math.random() * 360;
+        int deflection = (int) (battle.getRandom().nextDouble() * (getMaxDeflection(shooter, distance)) * GameUtils.PIXEL_BY_METER);
+        double angle = battle.getRandom().nextDouble() * 360;
 
         // calculate impact position
-        float[] impactPosition = MapLogic.getCoordinatesAfterTranslation(target.getSprite().getX(), target.getSprite()
-                .getY(), deflection, angle, Math.random() < 0.5);
+        float[] impactPosition = MapLogic.getCoordinatesAfterTranslation(target.getCurrentX(), target.getCurrentY(),
+                deflection, angle, battle.getRandom().nextDouble() < 0.5);
 
         // draw explosion sprite
         battle.getOnNewSprite().drawAnimatedSprite(impactPosition[0], impactPosition[1], "explosion.png", 40,
@@ -80,7 +80,7 @@ public abstract class DeflectionWeapon extends Weapon {
                     unit.getShots(battle, shooter);
                     if (distanceToImpact < explosionSizeInTiles * EXPLOSION_EPICENTER_SIZE_FACTOR) {
                         // great damage in the explosion's epicenter
-                        resolveDamageDiceRoll(CHANCE_TO_HIT_IN_EPICENTER, shooter, unit);
+                        resolveDamageDiceRoll(battle, CHANCE_TO_HIT_IN_EPICENTER, shooter, unit);
                     } else {
                         // minor damage further
                         int tohit = CHANCE_TO_HIT_AROUND_EPICENTER;
@@ -94,12 +94,11 @@ public abstract class DeflectionWeapon extends Weapon {
                             tohit -= 5 * (unit.getExperience().ordinal() + 1);
                         }
 
-                        resolveDamageDiceRoll(tohit, shooter, unit);
+                        resolveDamageDiceRoll(battle, tohit, shooter, unit);
                     }
 
                     if (unit instanceof Vehicle && !unit.isDead()) {
-                        battle.getOnNewSoundToPlay().playSound("clonk", unit.getSprite().getX(),
-                                unit.getSprite().getY());
+                        battle.getOnNewSoundToPlay().playSound("clonk", unit.getCurrentX(), unit.getCurrentY());
                     }
                 }
             }
@@ -7,6 +7,7 @@ import org.andengine.util.color.Color;
 import com.glevel.wwii.R;
 import com.glevel.wwii.game.GameUtils;
 import com.glevel.wwii.game.andengine.custom.CustomColors;
+import com.glevel.wwii.game.logic.EventScheduler;
 import com.glevel.wwii.game.logic.MapLogic;
 import com.glevel.wwii.game.models.Battle;
 import com.glevel.wwii.game.models.map.Tile.TerrainType;
@@ -41,6 +42,13 @@ public abstract class Weapon implements Serializable {
 								// reloading
 	private int aimCounter = 0;
 
+	// timers of the battle, in ticks
+	private static final int AIM_DURATION = 10;
+	private static final int RELOAD_DURATION_BY_SPEED = 12;
+	private transient EventScheduler.Event aimEvent;
+	private transient EventScheduler.Event reloadEvent;
+	private transient EventScheduler.Event shotEvent;
+
 	// price
 	private static final int WEAPON_BASE_PRICE = 2;
 
@@ -142,7 +150,7 @@ public abstract class Weapon implements Serializable {
 
 	public void resolveFireShot(Battle battle, Unit shooter, Unit target) {
 		// does it touch the target ? Calculate the chance to hit
-		resolveDamageDiceRoll(getToHit(shooter, target), shooter, target);
+		resolveDamageDiceRoll(battle, getToHit(shooter, target), shooter, target);
 	}
 
 	private int getToHit(Unit shooter, Unit target) {
@@ -183,10 +191,10 @@ public abstract class Weapon implements Serializable {
 		}
 	}
 
-	protected void resolveDamageDiceRoll(int tohit, Unit shooter, Unit target) {
+	protected void resolveDamageDiceRoll(Battle battle, int tohit, Unit shooter, Unit target) {
 
 		if (target instanceof Soldier || target instanceof Cannon) {
-			int diceRoll = (int) (Math.random() * 100);
+			int diceRoll = (int) (battle.getRandom().nextDouble() * 100);
 			if (diceRoll < tohit) {
 				// hit !
 				if (diceRoll < tohit / 4) {
@@ -196,7 +204,7 @@ public abstract class Weapon implements Serializable {
 					// heavy !
 					target.applyDamage(2);
 				} else {
-					if (Math.random() < 0.5) {
+					if (battle.getRandom().nextDouble() < 0.5) {
 						// light injured
 						target.applyDamage(1);
 					} else {
@@ -212,8 +220,7 @@ public abstract class Weapon implements Serializable {
 
 			// back and sides of tanks are more vulnerable
 			int sidesBonus = 0;
-			float absoluteAngle = Math.abs(MapLogic.getAngle(target.getSprite(), shooter.getSprite().getX(), shooter
-					.getSprite().getY()));
+			float absoluteAngle = Math.abs(MapLogic.getAngle(target, shooter.getCurrentX(), shooter.getCurrentY()));
 			if (absoluteAngle > 135.0f) {
 				// back
 				sidesBonus = 2;
@@ -221,7 +228,7 @@ public abstract class Weapon implements Serializable {
 				// sides
 				sidesBonus = 1;
 			}
-			int damage = (int) (Math.random() * (sidesBonus + atPower - vehicle.getArmor()));
+			int damage = (int) (battle.getRandom().nextDouble() * (sidesBonus + atPower - vehicle.getArmor()));
 			target.applyDamage(damage);
 		}
 
@@ -281,4 +288,69 @@ public abstract class Weapon implements Serializable {
 		return sound;
 	}
 
+	/**
+	 * Starts to aim if not already aiming : the burst of cadence shots is
+	 * ready AIM_DURATION ticks later.
+	 * 
+	 * @param battle
+	 */
+	public void aim(Battle battle) {
+		EventScheduler scheduler = battle.getScheduler();
+		if (aimEvent == null || !aimEvent.isScheduledIn(scheduler)) {
+			aimCounter = -AIM_DURATION;
+			aimEvent = new EventScheduler.Event() {
+				@Override
+				public void run() {
+					aimCounter = cadence;
+				}
+			};
+			scheduler.schedule(aimEvent, AIM_DURATION);
+		}
+	}
+
+	/**
+	 * Starts to reload if not already reloading : the magazine is full again
+	 * RELOAD_DURATION_BY_SPEED ticks by point of reload speed later.
+	 * 
+	 * @param battle
+	 */
+	public void reload(Battle battle) {
+		EventScheduler scheduler = battle.getScheduler();
+		if (reloadEvent == null || !reloadEvent.isScheduledIn(scheduler)) {
+			reloadCounter = -reloadSpeed;
+			reloadEvent = new EventScheduler.Event() {
+				@Override
+				public void run() {
+					reloadCounter = magazineSize;
+				}
+			};
+			scheduler.schedule(reloadEvent, Math.max(1, reloadSpeed * RELOAD_DURATION_BY_SPEED));
+		}
+	}
+
+	/**
+	 * @param battle
+	 * @return true if the last shot is older than 11 - shootSpeed ticks
+	 */
+	public boolean isReadyToShoot(Battle battle) {
+		return shotEvent == null || !shotEvent.isScheduledIn(battle.getScheduler());
+	}
+
+	/**
+	 * Uses a bullet of the magazine and of the burst.
+	 * 
+	 * @param battle
+	 */
+	public void fireShot(Battle battle) {
+		ammoAmount--;
+		reloadCounter--;
+		aimCounter--;
+		shotEvent = new EventScheduler.Event() {
+			@Override
+			public void run() {
+			}
+		};
+		battle.getScheduler().schedule(shotEvent, Math.max(1, 11 - shootSpeed));
+	}
+
 }